@@ -0,0 +1,156 @@
+package org.example.secureshare.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Keeps audit_log range-partitioned by month on timestamp, as audit_log_pYYYYMM plus a default partition that
+// only catches rows outside the months created ahead. Retention drops whole partitions instead of deleting rows.
+// On first start this converts the plain table Hibernate created, copying the existing rows across.
+@Component
+@DependsOn("entityManagerFactory")
+public class AuditLogPartitioning {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogPartitioning.class);
+
+    private static final String PARTITION_PREFIX = "audit_log_p";
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARTITION_PREFIX + "(\\d{6})");
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    // Serialises the conversion and maintenance across nodes starting at the same time
+    private static final long ADVISORY_LOCK_ID = 0x617564697400L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${spring.app.audit.retentionMonths}")
+    private int retentionMonths;
+
+    @Value("${spring.app.audit.partitionsAhead}")
+    private int partitionsAhead;
+
+    public AuditLogPartitioning(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        transactionTemplate.executeWithoutResult(status -> {
+            lockAcrossNodes();
+            if (isPartitioned()) {
+                return;
+            }
+
+            YearMonth firstMonth = YearMonth.now();
+            LocalDate oldest = jdbcTemplate.queryForObject("SELECT CAST(MIN(timestamp) AS DATE) FROM audit_log", LocalDate.class);
+            if (oldest != null && YearMonth.from(oldest).isBefore(firstMonth)) {
+                firstMonth = YearMonth.from(oldest);
+            }
+            logger.info("Partitioning audit_log by month from {}", firstMonth);
+
+            jdbcTemplate.execute("ALTER TABLE audit_log RENAME TO audit_log_unpartitioned");
+            jdbcTemplate.execute("ALTER TABLE audit_log_unpartitioned RENAME CONSTRAINT audit_log_pkey TO audit_log_unpartitioned_pkey");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_audit_log_user_timestamp");
+
+            // Identity columns are not supported on partitioned tables before PostgreSQL 17, so ids come from a sequence
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS audit_log_partitioned_id_seq");
+            jdbcTemplate.execute("CREATE TABLE audit_log (" +
+                    "id BIGINT NOT NULL DEFAULT nextval('audit_log_partitioned_id_seq'), " +
+                    "user_id BIGINT, " +
+                    "action VARCHAR(255), " +
+                    "filename VARCHAR(255), " +
+                    "timestamp TIMESTAMP(6) NOT NULL, " +
+                    "PRIMARY KEY (id, timestamp)" +
+                    ") PARTITION BY RANGE (timestamp)");
+            jdbcTemplate.execute("ALTER SEQUENCE audit_log_partitioned_id_seq OWNED BY audit_log.id");
+            jdbcTemplate.execute("CREATE TABLE audit_log_default PARTITION OF audit_log DEFAULT");
+            for (YearMonth month = firstMonth; !month.isAfter(YearMonth.now().plusMonths(partitionsAhead)); month = month.plusMonths(1)) {
+                createPartition(month);
+            }
+
+            int copied = jdbcTemplate.update("INSERT INTO audit_log (id, user_id, action, filename, timestamp) " +
+                    "SELECT id, user_id, action, filename, COALESCE(timestamp, CURRENT_TIMESTAMP) FROM audit_log_unpartitioned");
+            jdbcTemplate.queryForObject("SELECT setval('audit_log_partitioned_id_seq', COALESCE((SELECT MAX(id) FROM audit_log), 0) + 1, false)", Long.class);
+            jdbcTemplate.execute("DROP TABLE audit_log_unpartitioned");
+            logger.info("Moved {} audit log rows into the partitioned table", copied);
+        });
+
+        // Serves the per-user history ordered by time; created on the parent, so every partition gets it
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_audit_log_user_timestamp ON audit_log (user_id, timestamp DESC)");
+        maintainPartitions();
+    }
+
+    // Creates the coming months' partitions before rows arrive for them, and drops the months past retention
+    @Scheduled(cron = "${spring.app.audit.partitionMaintenanceCron}")
+    public void maintainPartitions() {
+        transactionTemplate.executeWithoutResult(status -> {
+            lockAcrossNodes();
+            for (int i = 0; i <= partitionsAhead; i++) {
+                createPartition(YearMonth.now().plusMonths(i));
+            }
+        });
+
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth oldestKept = YearMonth.now().minusMonths(retentionMonths);
+        for (String partition : listPartitions()) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches() && YearMonth.parse(matcher.group(1), PARTITION_MONTH).isBefore(oldestKept)) {
+                jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                logger.info("Dropped audit log partition {} past the {}-month retention", partition, retentionMonths);
+            }
+        }
+        // Rows only land here when a month's partition was missing; they are few, so a DELETE is fine
+        jdbcTemplate.update("DELETE FROM audit_log_default WHERE timestamp < ?", oldestKept.atDay(1).atStartOfDay());
+    }
+
+    // Held until the surrounding transaction ends
+    private void lockAcrossNodes() {
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", resultSet -> {
+        }, ADVISORY_LOCK_ID);
+    }
+
+    private boolean isPartitioned() {
+        Boolean partitioned = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid " +
+                        "WHERE c.relname = 'audit_log' AND c.relnamespace = current_schema()::regnamespace)",
+                Boolean.class);
+        return Boolean.TRUE.equals(partitioned);
+    }
+
+    private List<String> listPartitions() {
+        return jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent " +
+                        "WHERE p.relname = 'audit_log' AND p.relnamespace = current_schema()::regnamespace",
+                String.class);
+    }
+
+    // Fails if the default partition already holds rows for the month; that is logged and the rows stay where they are
+    private void createPartition(YearMonth month) {
+        String name = PARTITION_PREFIX + month.format(PARTITION_MONTH);
+        try {
+            jdbcTemplate.execute("SAVEPOINT create_partition");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF audit_log FOR VALUES FROM ('" +
+                    month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+            jdbcTemplate.execute("RELEASE SAVEPOINT create_partition");
+        } catch (RuntimeException e) {
+            jdbcTemplate.execute("ROLLBACK TO SAVEPOINT create_partition");
+            logger.error("Failed to create audit log partition {}", name, e);
+        }
+    }
+}
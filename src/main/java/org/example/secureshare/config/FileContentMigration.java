@@ -0,0 +1,63 @@
+package org.example.secureshare.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+// Moves payload and envelope columns that older versions stored inline on the file table into file_content.
+// The wrapped key stays on the file row, which is where it is mapped today.
+// Runs after the entity manager factory so Hibernate has already created the new table and column.
+@Component
+@DependsOn("entityManagerFactory")
+public class FileContentMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileContentMigration.class);
+
+    private static final List<String> LEGACY_COLUMNS = List.of("encrypted_data", "iv", "auth_tag", "signature");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public FileContentMigration(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Integer legacyColumns = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = 'file' AND column_name IN ('encrypted_data', 'iv', 'auth_tag', 'signature')",
+                Integer.class);
+        if (legacyColumns == null || legacyColumns < LEGACY_COLUMNS.size()) {
+            return;
+        }
+
+        // The content entity no longer maps the BYTEA column; it stays here until BlobMigrationService moves it out
+        jdbcTemplate.execute("ALTER TABLE file_content ADD COLUMN IF NOT EXISTS encrypted_data BYTEA");
+
+        List<Long> fileIds = jdbcTemplate.queryForList("SELECT id FROM file WHERE content_id IS NULL ORDER BY id", Long.class);
+        logger.info("Moving inline content of {} files into file_content", fileIds.size());
+
+        // One transaction per file keeps each copy small; the data is copied server-side
+        for (Long fileId : fileIds) {
+            transactionTemplate.executeWithoutResult(status -> {
+                Long contentId = jdbcTemplate.queryForObject(
+                        "INSERT INTO file_content (encrypted_data, iv, auth_tag, signature) " +
+                                "SELECT encrypted_data, iv, auth_tag, signature FROM file WHERE id = ? RETURNING id",
+                        Long.class, fileId);
+                jdbcTemplate.update("UPDATE file SET content_id = ? WHERE id = ?", contentId, fileId);
+            });
+        }
+
+        for (String column : LEGACY_COLUMNS) {
+            jdbcTemplate.execute("ALTER TABLE file DROP COLUMN IF EXISTS " + column);
+        }
+        logger.info("File content migration complete; legacy columns dropped from file table");
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.secureshare.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Older versions gave every recipient their own file_content row holding their wrapped key.
+// This moves the wrapped keys onto the file rows, points shared copies back at the original content
+// and fills in the reference counts, so existing shares behave like new ones.
+@Component
+@DependsOn({"entityManagerFactory", "fileContentMigration"})
+public class SharedContentMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedContentMigration.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public SharedContentMigration(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        Boolean pending = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM file_content WHERE ref_count IS NULL)", Boolean.class);
+        Integer keyColumn = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = 'file_content' AND column_name = 'encrypted_aes_key'",
+                Integer.class);
+        boolean hasKeyColumn = keyColumn != null && keyColumn > 0;
+        if (!Boolean.TRUE.equals(pending) && !hasKeyColumn) {
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            if (hasKeyColumn) {
+                jdbcTemplate.update("UPDATE file f SET encrypted_aes_key = c.encrypted_aes_key FROM file_content c " +
+                        "WHERE c.id = f.content_id AND f.encrypted_aes_key IS NULL");
+            }
+
+            jdbcTemplate.update("UPDATE file_content c SET signer_id = o.owner_id FROM file f, file o " +
+                    "WHERE f.content_id = c.id AND o.id = f.original_file_id AND c.signer_id IS NULL");
+
+            // Copies that already share the original's blob can share its content row too;
+            // inline copies keep their own row until the blob migration has moved them out
+            int repointed = jdbcTemplate.update("UPDATE file f SET content_id = o.content_id FROM file o, file_content oc, file_content fc " +
+                    "WHERE o.id = f.original_file_id AND f.id <> o.id AND oc.id = o.content_id AND fc.id = f.content_id " +
+                    "AND fc.id <> oc.id AND fc.blob_ref IS NOT NULL AND fc.blob_ref = oc.blob_ref");
+            int removed = jdbcTemplate.update("DELETE FROM file_content c WHERE NOT EXISTS (SELECT 1 FROM file f WHERE f.content_id = c.id)");
+
+            jdbcTemplate.update("UPDATE file_content c SET ref_count = (SELECT COUNT(*) FROM file f WHERE f.content_id = c.id)");
+
+            if (hasKeyColumn) {
+                jdbcTemplate.execute("ALTER TABLE file_content DROP COLUMN encrypted_aes_key");
+            }
+            logger.info("Shared content migration complete; {} shared copies repointed, {} duplicate content rows removed", repointed, removed);
+        });
+    }
+}
@@ -2,6 +2,7 @@ package org.example.secureshare.controller;
 
 
 import org.example.secureshare.model.AppRole;
+import org.example.secureshare.model.KeyScheme;
 import org.example.secureshare.model.Role;
 import org.example.secureshare.model.User;
 import org.example.secureshare.repository.RoleRepository;
@@ -12,13 +13,18 @@ import org.example.secureshare.security.request.SignUpRequest;
 import org.example.secureshare.security.request.VerifyOtpRequest;
 import org.example.secureshare.security.response.MessageResponse;
 import org.example.secureshare.security.response.UserInfoResponse;
+import org.example.secureshare.security.services.RevokedTokenService;
 import org.example.secureshare.security.services.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.example.secureshare.service.AuditLogService;
-import org.example.secureshare.service.KeyService;
+import org.example.secureshare.service.KeySchemeMigrationService;
+import org.example.secureshare.service.UserKeyService;
 import org.example.secureshare.service.OtpService;
 import org.example.secureshare.util.AuthUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseCookie;
@@ -33,7 +39,6 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.security.KeyPair;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
@@ -45,7 +50,13 @@ public class AuthController {
     private AuthenticationManager authenticationManager;
 
     @Autowired
-    private KeyService keyService;
+    private UserKeyService userKeyService;
+
+    @Autowired
+    private KeySchemeMigrationService keySchemeMigrationService;
+
+    @Value("${spring.app.keyScheme.signupDefault}")
+    private KeyScheme signupKeyScheme;
 
     @Autowired
     private PasswordEncoder passwordEncoder;
@@ -68,6 +79,9 @@ public class AuthController {
     @Autowired
     private OtpService otpService;
 
+    @Autowired
+    private RevokedTokenService revokedTokenService;
+
     @PostMapping("/signup")
     public ResponseEntity<?> registerUser(@Valid @RequestBody SignUpRequest signUpRequest) {
         if (userRepository.existsByUsername(signUpRequest.getUsername())) {
@@ -89,10 +103,7 @@ public class AuthController {
         );
 
         try {
-            KeyPair keyPair = keyService.generateRsaKeyPair();
-            user.setPublicKey(keyService.encodePublicKey(keyPair.getPublic()));
-            String encryptedPrivateKey = keyService.encryptPrivateKey(keyPair.getPrivate());
-            user.setPrivateKey(encryptedPrivateKey);
+            userKeyService.provisionKeys(user, signupKeyScheme);
         } catch (NoSuchAlgorithmException e) {
             return ResponseEntity
                     .status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -144,7 +155,9 @@ public class AuthController {
 
                 UserDetailsImpl userDetails = new UserDetailsImpl(user.getUserId(), user.getUsername(), user.getEmail(), user.getPassword(), Collections.singletonList((GrantedAuthority) () -> "ROLE_USER"));
 
-                String jwtTokenString = jwtUtils.generateTokenFromUserName(userDetails.getUsername());
+                userDetails.setCredentialVersion(user.getCredentialVersion());
+
+                String jwtTokenString = jwtUtils.generateTokenFromUser(userDetails);
 
                 ResponseCookie jwtCookie = jwtUtils.generateTokenFromCookie(userDetails);
                 List<String> roles = userDetails.getAuthorities().stream()
@@ -158,6 +171,7 @@ public class AuthController {
                         jwtTokenString
                 );
 
+                keySchemeMigrationService.requestMigration(user);
                 auditLogService.logAction(user.getUserId(), "USER_SIGNED_IN" , "");
                 return ResponseEntity.ok()
                         .header(HttpHeaders.SET_COOKIE, jwtCookie.toString())
@@ -170,9 +184,18 @@ public class AuthController {
     }
 
     @PostMapping("/signout")
-    public ResponseEntity<?> logoutUser() {
+    public ResponseEntity<?> logoutUser(HttpServletRequest request) {
 
         User user = authUtil.getLoggedInUser();
+        // The cookie is cleared below, but a copy of the token would stay valid until it expires
+        String jwt = jwtUtils.getJwtFromCookie(request);
+        if (jwt == null) {
+            jwt = jwtUtils.getJwtFromHeader(request);
+        }
+        Claims claims = jwt != null ? jwtUtils.parseClaims(jwt) : null;
+        if (claims != null) {
+            revokedTokenService.revoke(claims.getId(), claims.getExpiration());
+        }
         ResponseCookie cookie = jwtUtils.generateNoTokenFromCookie();
         Map<String, Object> response = new HashMap<>();
         response.put("message", "User signed out successfully!");
@@ -1,21 +1,35 @@
 package org.example.secureshare.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
 import org.example.secureshare.config.AppConstants;
 import org.example.secureshare.payload.fiteDTO.DeleteFileRequest;
 import org.example.secureshare.payload.fiteDTO.FetchFilesResponse;
+import org.example.secureshare.payload.fiteDTO.FileDownload;
 import org.example.secureshare.service.AuditLogService;
 import org.example.secureshare.service.FileService;
+import org.example.secureshare.service.TransferBudgetService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 
 @RestController
 @RequestMapping("/api/auth/files")
@@ -27,6 +41,12 @@ public class FileController {
     @Autowired
     private AuditLogService auditLogService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransferBudgetService transferBudgetService;
+
     @PostMapping("/upload")
     public ResponseEntity<?> uploadFiles(
             @RequestParam("files") MultipartFile[] files,
@@ -34,7 +54,18 @@ public class FileController {
             @RequestParam("category") String category) {
 
 
-        try {
+        long estimate = 0;
+        for (MultipartFile file : files) {
+            estimate += transferBudgetService.estimate(file.getSize());
+        }
+        Optional<TransferBudgetService.Reservation> reservation = transferBudgetService.tryAcquire(estimate);
+        if (reservation.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(transferBudgetService.getRetryAfterSeconds()))
+                    .body(Map.of("error", "Server is busy with other transfers. Please retry shortly."));
+        }
+
+        try (TransferBudgetService.Reservation ignored = reservation.get()) {
             List<Long> fileIds = fileService.storeFiles(files, description, category);
 
             for(MultipartFile file : files) {
@@ -52,34 +83,33 @@ public class FileController {
 
     // Inside the downloadFileById method
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<?> downloadFileById(@PathVariable("fileId") Long fileId) {
+    public ResponseEntity<StreamingResponseBody> downloadFileById(
+            @PathVariable("fileId") Long fileId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            HttpServletRequest request) {
 
-        try {
-            // Retrieve both the file data and its metadata, including the original filename
-            Map<String, Object> fileDownloadData = fileService.downloadFileAndGetMetadata(fileId);
+        Optional<TransferBudgetService.Reservation> reservation = admit(request);
+        if (reservation.isEmpty()) {
+            return busyResponse();
+        }
 
-            byte[] fileData = (byte[]) fileDownloadData.get("fileData");
-            String originalFilename = (String) fileDownloadData.get("originalFilename");
-            String contentType = (String) fileDownloadData.get("contentType");
+        try {
+            // Resolve the metadata and a body that decrypts while it is written to the response
+            FileDownload fileDownload = fileService.downloadFileAndGetMetadata(fileId);
 
             // Log the file download action
-            auditLogService.logAction("FILE_DOWNLOAD", originalFilename);
+            auditLogService.logAction("FILE_DOWNLOAD", fileDownload.getFilename());
 
-            // Set headers for file download
-            HttpHeaders headers = new HttpHeaders();
             // Set the content type based on the stored value
-            headers.setContentType(MediaType.parseMediaType(contentType));
-            // Use the originalFilename for the Content-Disposition header
-            headers.setContentDispositionFormData("attachment", originalFilename);
-            headers.setContentLength(fileData.length);
-
-            return ResponseEntity.ok().headers(headers).body(fileData);
+            return downloadResponse(fileDownload, MediaType.parseMediaType(fileDownload.getContentType()),
+                    resolveRange(fileDownload, range, ifRange), reservation.get());
         } catch (NoSuchElementException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+            return errorResponse(HttpStatus.NOT_FOUND, e.getMessage());
         } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", e.getMessage()));
+            return errorResponse(HttpStatus.FORBIDDEN, e.getMessage());
         } catch (RuntimeException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", e.getMessage()));
+            return errorResponse(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
         }
     }
 
@@ -123,33 +153,160 @@ public class FileController {
     }
 
     @GetMapping("/download/encrypted/{fileId}")
-    public ResponseEntity<?> downloadEncryptedFile(@PathVariable("fileId") Long fileId) {
+    public ResponseEntity<StreamingResponseBody> downloadEncryptedFile(
+            @PathVariable("fileId") Long fileId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            HttpServletRequest request) {
+
+        // Admitted first, so a request that is turned away neither queues the key mail nor logs a download
+        Optional<TransferBudgetService.Reservation> reservation = admit(request);
+        if (reservation.isEmpty()) {
+            return busyResponse();
+        }
+
         try {
-            Map<String, Object> encryptedData = fileService.downloadEncryptedFileAndSendKeys(fileId);
+            FileDownload encryptedDownload = fileService.downloadEncryptedFile(fileId);
 
-            byte[] encryptedFile = (byte[]) encryptedData.get("encryptedFileData");
-            String filename = (String) encryptedData.get("originalFilename");
-            String contentType = (String) encryptedData.get("contentType");
+            // Decided on what is served rather than on the Range header: only a resumed download already has the keys
+            ServedRange served = resolveRange(encryptedDownload, range, ifRange);
+            if (served.fromTheStart()) {
+                encryptedDownload.getSendKeys().run();
+            }
 
             // Log the file download action
-            auditLogService.logAction("ENCRYPTED_FILE_DOWNLOAD", filename);
+            auditLogService.logAction("ENCRYPTED_FILE_DOWNLOAD", encryptedDownload.getFilename());
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(encryptedFile.length);
-
-            return ResponseEntity.ok().headers(headers).body(encryptedFile);
+            return downloadResponse(encryptedDownload, MediaType.APPLICATION_OCTET_STREAM, served, reservation.get());
 
         } catch (NoSuchElementException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+            return errorResponse(HttpStatus.NOT_FOUND, e.getMessage());
         } catch (SecurityException e) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", e.getMessage()));
+            return errorResponse(HttpStatus.FORBIDDEN, e.getMessage());
         } catch (RuntimeException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", e.getMessage()));
+            return errorResponse(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage());
         }
     }
 
+    // What a download response carries: the whole file (200), one byte range (206) or nothing (416)
+    private record ServedRange(HttpStatus status, long start, long end) {
 
+        boolean fromTheStart() {
+            return status != HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE && start == 0;
+        }
+    }
+
+    // A single byte range is served as 206 when the stored format allows it; anything else gets the whole file.
+    // Multi-range requests are answered with the full body, which RFC 9110 permits.
+    private ServedRange resolveRange(FileDownload download, String range, String ifRange) {
+        long totalLength = download.getContentLength();
+        ServedRange whole = new ServedRange(HttpStatus.OK, 0, totalLength - 1);
+        if (download.getRangeBody() == null || range == null || (ifRange != null && !ifRange.equals(download.getEtag()))) {
+            return whole;
+        }
 
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored
+            return whole;
+        }
+        if (ranges.size() != 1) {
+            return whole;
+        }
+
+        long start;
+        long end;
+        try {
+            start = ranges.get(0).getRangeStart(totalLength);
+            end = ranges.get(0).getRangeEnd(totalLength);
+        } catch (IllegalArgumentException e) {
+            start = totalLength;
+            end = -1;
+        }
+        // HttpRange clamps the end to the length but does not reject a start past it
+        if (start >= totalLength || end < start) {
+            return new ServedRange(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, totalLength, -1);
+        }
+        return new ServedRange(HttpStatus.PARTIAL_CONTENT, start, end);
+    }
+
+    private ResponseEntity<StreamingResponseBody> downloadResponse(FileDownload download, MediaType contentType, ServedRange served,
+                                                                   TransferBudgetService.Reservation reservation) {
+        long totalLength = download.getContentLength();
+        if (served.status() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + totalLength)
+                    .build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType);
+        // Use the originalFilename for the Content-Disposition header
+        headers.setContentDispositionFormData("attachment", download.getFilename());
+        if (download.getRangeBody() != null) {
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (download.getEtag() != null) {
+                headers.setETag(download.getEtag());
+            }
+        }
+
+        if (served.status() == HttpStatus.PARTIAL_CONTENT) {
+            long length = served.end() - served.start() + 1;
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + served.start() + "-" + served.end() + "/" + totalLength);
+            headers.setContentLength(length);
+            return streamed(HttpStatus.PARTIAL_CONTENT, headers, length, download.getRangeBody().apply(served.start(), served.end()), reservation);
+        }
+
+        headers.setContentLength(totalLength);
+        return streamed(HttpStatus.OK, headers, totalLength, download.getBody(), reservation);
+    }
+
+    // Downloads are admitted before any database or crypto work, when their size is not known yet, so they
+    // reserve a whole stream's share. It is released when the request ends however it ends: after the body
+    // is written, when the async request times out or fails without writing it, or when no body is streamed.
+    private Optional<TransferBudgetService.Reservation> admit(HttpServletRequest request) {
+        Optional<TransferBudgetService.Reservation> reservation = transferBudgetService.tryAcquire(transferBudgetService.estimate(-1));
+        reservation.ifPresent(held -> {
+            WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+            asyncManager.registerCallableInterceptor(TransferBudgetService.Reservation.class.getName(), new CallableProcessingInterceptor() {
+                @Override
+                public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                    held.close();
+                }
+            });
+            RequestContextHolder.currentRequestAttributes().registerDestructionCallback(TransferBudgetService.Reservation.class.getName(), () -> {
+                if (!asyncManager.isConcurrentHandlingStarted()) {
+                    held.close();
+                }
+            }, RequestAttributes.SCOPE_REQUEST);
+        });
+        return reservation;
+    }
+
+    // Trims the reservation to this response's share and gives it back as soon as the body has been written
+    private ResponseEntity<StreamingResponseBody> streamed(HttpStatus status, HttpHeaders headers, long length, StreamingResponseBody body,
+                                                          TransferBudgetService.Reservation reservation) {
+        reservation.shrinkTo(transferBudgetService.estimate(length));
+        return ResponseEntity.status(status).headers(headers).body(outputStream -> {
+            try (reservation) {
+                body.writeTo(outputStream);
+            }
+        });
+    }
+
+    private ResponseEntity<StreamingResponseBody> busyResponse() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(transferBudgetService.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> objectMapper.writeValue(outputStream, Map.of("error", "Server is busy with other transfers. Please retry shortly.")));
+    }
+
+    // Streaming endpoints are typed to StreamingResponseBody, so error maps are written as JSON bodies
+    private ResponseEntity<StreamingResponseBody> errorResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(outputStream -> objectMapper.writeValue(outputStream, Map.of("error", String.valueOf(message))));
+    }
 }
\ No newline at end of file
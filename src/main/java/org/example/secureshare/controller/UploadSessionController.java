@@ -0,0 +1,110 @@
+package org.example.secureshare.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.example.secureshare.payload.fiteDTO.CreateUploadSessionRequest;
+import org.example.secureshare.payload.fiteDTO.UploadSessionResponse;
+import org.example.secureshare.service.AuditLogService;
+import org.example.secureshare.service.TransferBudgetService;
+import org.example.secureshare.service.UploadSessionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+// Resumable uploads: create a session, PUT chunks in any order (each may be retried), check progress, commit
+@RestController
+@RequestMapping("/api/auth/files/uploads")
+public class UploadSessionController {
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Autowired
+    private AuditLogService auditLogService;
+
+    @Autowired
+    private TransferBudgetService transferBudgetService;
+
+    @PostMapping
+    public ResponseEntity<?> createSession(@RequestBody CreateUploadSessionRequest request) {
+        try {
+            UploadSessionResponse session = uploadSessionService.createSession(request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(session);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Failed to create upload session. " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<?> getSession(@PathVariable String sessionId) {
+        try {
+            return ResponseEntity.ok(uploadSessionService.getSession(sessionId));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // The request body is the raw chunk and is streamed straight into the encryptor
+    @PutMapping("/{sessionId}/chunks/{chunkIndex}")
+    public ResponseEntity<?> putChunk(@PathVariable String sessionId, @PathVariable int chunkIndex, HttpServletRequest request) {
+        Optional<TransferBudgetService.Reservation> reservation = transferBudgetService.tryAcquire(transferBudgetService.estimate(request.getContentLengthLong()));
+        if (reservation.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(transferBudgetService.getRetryAfterSeconds()))
+                    .body(Map.of("error", "Server is busy with other transfers. Please retry shortly."));
+        }
+
+        try (TransferBudgetService.Reservation ignored = reservation.get()) {
+            return ResponseEntity.ok(uploadSessionService.putChunk(sessionId, chunkIndex, request.getInputStream()));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException | IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Failed to store chunk. " + e.getMessage()));
+        }
+    }
+
+    @PostMapping("/{sessionId}/commit")
+    public ResponseEntity<?> commit(@PathVariable String sessionId) {
+        try {
+            Long fileId = uploadSessionService.commit(sessionId);
+            auditLogService.logAction("FILE_UPLOAD", "File ID: " + fileId);
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of("message", "File uploaded successfully!", "fileId", fileId));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("error", "Failed to commit upload. " + e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<?> abort(@PathVariable String sessionId) {
+        try {
+            uploadSessionService.abort(sessionId);
+            return ResponseEntity.ok(Map.of("message", "Upload session discarded."));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(Map.of("error", e.getMessage()));
+        }
+    }
+}
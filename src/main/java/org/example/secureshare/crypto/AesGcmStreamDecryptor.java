@@ -0,0 +1,82 @@
+package org.example.secureshare.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Incrementally decrypts a single-shot AES-GCM ciphertext whose tag is stored separately.
+ * <p>
+ * The JCE GCM cipher buffers the whole ciphertext in decrypt mode until {@code doFinal}, so the
+ * keystream is applied with AES/CTR on the GCM counter blocks instead, and the tag is recomputed by
+ * re-encrypting the recovered plaintext under the same key and IV. The last chunk of plaintext is
+ * only written after the tag matches, but everything before it is released unverified, so callers
+ * must first run the ciphertext through {@code decrypt} with a discarding output and only stream a
+ * copy that has passed. Each instance decrypts once.
+ */
+public class AesGcmStreamDecryptor {
+
+    private static final int GCM_TAG_LENGTH = 16;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Cipher keystream;
+    private final Cipher tagCipher;
+    private final byte[] expectedTag;
+
+    public AesGcmStreamDecryptor(SecretKey key, byte[] iv, byte[] expectedTag) throws GeneralSecurityException {
+        // With a 96-bit IV, GCM encrypts the first block with the counter IV || 0x00000002
+        byte[] initialCounter = Arrays.copyOf(iv, 16);
+        initialCounter[15] = 2;
+        this.keystream = Cipher.getInstance("AES/CTR/NoPadding");
+        this.keystream.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(initialCounter));
+        this.tagCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        this.tagCipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+        this.expectedTag = expectedTag.clone();
+    }
+
+    public long decrypt(InputStream ciphertext, OutputStream plaintext) throws IOException {
+        byte[] readBuffer = new byte[CHUNK_SIZE];
+        byte[] current = new byte[CHUNK_SIZE];
+        byte[] held = new byte[CHUNK_SIZE];
+        byte[] scratch = new byte[CHUNK_SIZE + 2 * GCM_TAG_LENGTH];
+        int heldLength = 0;
+        long total = 0;
+
+        try {
+            int read;
+            while ((read = ciphertext.readNBytes(readBuffer, 0, CHUNK_SIZE)) > 0) {
+                if (heldLength > 0) {
+                    plaintext.write(held, 0, heldLength);
+                }
+                int produced = keystream.update(readBuffer, 0, read, current, 0);
+                tagCipher.update(current, 0, produced, scratch, 0);
+
+                byte[] swap = held;
+                held = current;
+                current = swap;
+                heldLength = produced;
+                total += produced;
+            }
+
+            int tail = tagCipher.doFinal(scratch, 0);
+            byte[] computedTag = Arrays.copyOfRange(scratch, tail - GCM_TAG_LENGTH, tail);
+            if (!MessageDigest.isEqual(computedTag, expectedTag)) {
+                throw new IOException("File integrity check failed: authentication tag mismatch.");
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to decrypt file stream.", e);
+        }
+
+        if (heldLength > 0) {
+            plaintext.write(held, 0, heldLength);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.secureshare.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * Layout of the segmented AES-GCM container (format version 1).
+ * <pre>
+ * header:  magic "SSAG" | version (1 byte) | reserved (3 bytes) | segment size (int) | base IV (12 bytes)
+ * segment: ciphertext (segment size bytes, the last one may be shorter) | tag (16 bytes)
+ * </pre>
+ * Segment {@code i} is encrypted with the base IV XOR {@code i} as its nonce and with the header plus a
+ * final-segment flag as additional data, so segments cannot be reordered, truncated or moved between files.
+ */
+public final class SegmentedAesGcm {
+
+    public static final int VERSION = 1;
+    public static final String FORMAT_NAME = "aes-256-gcm-segmented-v1";
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    public static final int HEADER_LENGTH = 24;
+    public static final int TAG_LENGTH = 16;
+
+    private static final byte[] MAGIC = {'S', 'S', 'A', 'G'};
+    private static final int IV_LENGTH = 12;
+
+    private SegmentedAesGcm() {
+    }
+
+    public static byte[] header(int segmentSize, byte[] iv) {
+        if (iv.length != IV_LENGTH) {
+            throw new IllegalArgumentException("Segmented AES-GCM requires a 12-byte IV.");
+        }
+        return ByteBuffer.allocate(HEADER_LENGTH)
+                .put(MAGIC)
+                .put((byte) VERSION)
+                .put(new byte[3])
+                .putInt(segmentSize)
+                .put(iv)
+                .array();
+    }
+
+    public static int segmentSize(byte[] header) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.get() != VERSION) {
+            throw new IOException("Unsupported encrypted file format.");
+        }
+        buffer.position(8);
+        int segmentSize = buffer.getInt();
+        if (segmentSize <= 0) {
+            throw new IOException("Invalid segment size in encrypted file header.");
+        }
+        return segmentSize;
+    }
+
+    public static byte[] iv(byte[] header) {
+        return Arrays.copyOfRange(header, HEADER_LENGTH - IV_LENGTH, HEADER_LENGTH);
+    }
+
+    static byte[] nonce(byte[] iv, long segmentIndex) {
+        byte[] nonce = iv.clone();
+        for (int i = 0; i < Long.BYTES; i++) {
+            nonce[IV_LENGTH - 1 - i] ^= (byte) (segmentIndex >>> (8 * i));
+        }
+        return nonce;
+    }
+
+    static byte[] associatedData(byte[] header, boolean finalSegment) {
+        byte[] aad = Arrays.copyOf(header, HEADER_LENGTH + 1);
+        aad[HEADER_LENGTH] = (byte) (finalSegment ? 1 : 0);
+        return aad;
+    }
+
+    static int encryptSegment(Cipher cipher, SecretKey key, byte[] header, long segmentIndex, boolean finalSegment,
+                              byte[] plaintext, int length, byte[] output) throws GeneralSecurityException {
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce(iv(header), segmentIndex)));
+        cipher.updateAAD(associatedData(header, finalSegment));
+        return cipher.doFinal(plaintext, 0, length, output, 0);
+    }
+
+    // An empty file still has one (empty) final segment
+    public static long segmentCount(long plaintextLength, int segmentSize) {
+        return Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+    }
+
+    public static long ciphertextLength(long plaintextLength, int segmentSize) {
+        return HEADER_LENGTH + plaintextLength + segmentCount(plaintextLength, segmentSize) * TAG_LENGTH;
+    }
+
+    public static long plaintextLength(long ciphertextLength, int segmentSize) throws IOException {
+        long body = ciphertextLength - HEADER_LENGTH;
+        long segments = Math.max(1, (body + segmentSize + TAG_LENGTH - 1) / (segmentSize + TAG_LENGTH));
+        long plaintextLength = body - segments * TAG_LENGTH;
+        if (plaintextLength < 0 || ciphertextLength(plaintextLength, segmentSize) != ciphertextLength) {
+            throw new IOException("Encrypted file has an invalid length.");
+        }
+        return plaintextLength;
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.secureshare.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Encrypts independent, segment-aligned pieces of a file into the segmented AES-GCM container. The total
+ * plaintext length is fixed up front so the piece holding the final segment can be flagged correctly,
+ * which lets the pieces arrive in any order.
+ */
+public class SegmentedAesGcmChunkEncryptor {
+
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] header;
+    private final int segmentSize;
+    private final long lastSegment;
+
+    public SegmentedAesGcmChunkEncryptor(Cipher cipher, SecretKey key, byte[] iv, int segmentSize, long plaintextLength) {
+        this.cipher = cipher;
+        this.key = key;
+        this.header = SegmentedAesGcm.header(segmentSize, iv);
+        this.segmentSize = segmentSize;
+        this.lastSegment = SegmentedAesGcm.segmentCount(plaintextLength, segmentSize) - 1;
+    }
+
+    public byte[] header() {
+        return header.clone();
+    }
+
+    // Where the ciphertext for a segment-aligned plaintext offset starts in the container
+    public long ciphertextOffset(long plaintextOffset) {
+        return SegmentedAesGcm.HEADER_LENGTH + (plaintextOffset / segmentSize) * (segmentSize + SegmentedAesGcm.TAG_LENGTH);
+    }
+
+    // How many bytes encrypt() writes for a chunk of this many plaintext bytes
+    public long ciphertextLength(long plaintextLength) {
+        return SegmentedAesGcm.ciphertextLength(plaintextLength, segmentSize) - SegmentedAesGcm.HEADER_LENGTH;
+    }
+
+    /**
+     * Reads exactly {@code length} plaintext bytes starting at {@code offset} and writes their segments.
+     * Throws IllegalArgumentException if the source holds fewer or more bytes than that.
+     */
+    public void encrypt(InputStream plaintext, long offset, long length, OutputStream ciphertext) throws IOException {
+        if (offset % segmentSize != 0 || length <= 0) {
+            throw new IllegalArgumentException("Chunks must start on a segment boundary and must not be empty.");
+        }
+        byte[] input = new byte[segmentSize];
+        byte[] output = new byte[segmentSize + SegmentedAesGcm.TAG_LENGTH];
+        long segmentIndex = offset / segmentSize;
+        long remaining = length;
+        try {
+            while (remaining > 0) {
+                int n = (int) Math.min(segmentSize, remaining);
+                if (plaintext.readNBytes(input, 0, n) < n) {
+                    throw new IllegalArgumentException("Chunk is shorter than expected.");
+                }
+                int produced = SegmentedAesGcm.encryptSegment(cipher, key, header, segmentIndex, segmentIndex == lastSegment, input, n, output);
+                ciphertext.write(output, 0, produced);
+                remaining -= n;
+                segmentIndex++;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt chunk.", e);
+        }
+        if (plaintext.read() != -1) {
+            throw new IllegalArgumentException("Chunk is longer than expected.");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.secureshare.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+/**
+ * Decrypts a byte range of a segmented AES-GCM container. Only the segments overlapping the range are
+ * read and authenticated, and each segment is verified before any of its plaintext is written.
+ */
+public class SegmentedAesGcmDecryptor {
+
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] expectedIv;
+
+    public SegmentedAesGcmDecryptor(Cipher cipher, SecretKey key, byte[] expectedIv) {
+        this.cipher = cipher;
+        this.key = key;
+        this.expectedIv = expectedIv.clone();
+    }
+
+    public static byte[] readHeader(SeekableByteChannel channel) throws IOException {
+        byte[] header = new byte[SegmentedAesGcm.HEADER_LENGTH];
+        readFully(channel.position(0), header, header.length);
+        SegmentedAesGcm.segmentSize(header);
+        return header;
+    }
+
+    /**
+     * Writes plaintext bytes {@code start} to {@code end} (inclusive) to the output stream.
+     */
+    public long decrypt(SeekableByteChannel channel, long start, long end, OutputStream plaintext) throws IOException {
+        byte[] header = readHeader(channel);
+        if (!MessageDigest.isEqual(SegmentedAesGcm.iv(header), expectedIv)) {
+            throw new IOException("File integrity check failed: header does not match the stored IV.");
+        }
+        int segmentSize = SegmentedAesGcm.segmentSize(header);
+        long plaintextLength = SegmentedAesGcm.plaintextLength(channel.size(), segmentSize);
+        long lastSegment = SegmentedAesGcm.segmentCount(plaintextLength, segmentSize) - 1;
+        if (start < 0 || end < start || end >= plaintextLength) {
+            throw new IllegalArgumentException("Requested range is outside the file.");
+        }
+
+        byte[] encrypted = new byte[segmentSize + SegmentedAesGcm.TAG_LENGTH];
+        byte[] decrypted = new byte[segmentSize];
+        long written = 0;
+        for (long index = start / segmentSize; index <= end / segmentSize; index++) {
+            long segmentStart = index * segmentSize;
+            int length = (int) Math.min(segmentSize, plaintextLength - segmentStart);
+            channel.position(SegmentedAesGcm.HEADER_LENGTH + index * (segmentSize + SegmentedAesGcm.TAG_LENGTH));
+            readFully(channel, encrypted, length + SegmentedAesGcm.TAG_LENGTH);
+
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(SegmentedAesGcm.TAG_LENGTH * 8, SegmentedAesGcm.nonce(expectedIv, index)));
+                cipher.updateAAD(SegmentedAesGcm.associatedData(header, index == lastSegment));
+                cipher.doFinal(encrypted, 0, length + SegmentedAesGcm.TAG_LENGTH, decrypted, 0);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("File integrity check failed for segment " + index + ".", e);
+            }
+
+            int from = (int) Math.max(0, start - segmentStart);
+            int to = (int) Math.min(length - 1, end - segmentStart);
+            plaintext.write(decrypted, from, to - from + 1);
+            written += to - from + 1;
+        }
+        return written;
+    }
+
+    private static void readFully(SeekableByteChannel channel, byte[] target, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(target, 0, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Encrypted file is truncated.");
+            }
+        }
+    }
+}
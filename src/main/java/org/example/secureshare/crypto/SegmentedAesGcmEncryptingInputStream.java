@@ -0,0 +1,94 @@
+package org.example.secureshare.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Reads plaintext from a source stream and yields the segmented AES-GCM container described in
+ * {@link SegmentedAesGcm}. One segment is read ahead so the final segment can be flagged as such.
+ */
+public class SegmentedAesGcmEncryptingInputStream extends InputStream {
+
+    private final InputStream source;
+    private final Cipher cipher;
+    private final SecretKey key;
+    private final byte[] header;
+    private final int segmentSize;
+
+    private byte[] current;
+    private byte[] next;
+    private int currentLength = -1;
+    private long segmentIndex;
+
+    private byte[] outputBuffer;
+    private int outputPos;
+    private int outputLimit;
+    private boolean finished;
+
+    public SegmentedAesGcmEncryptingInputStream(InputStream source, Cipher cipher, SecretKey key, byte[] iv, int segmentSize) {
+        this.source = source;
+        this.cipher = cipher;
+        this.key = key;
+        this.segmentSize = segmentSize;
+        this.header = SegmentedAesGcm.header(segmentSize, iv);
+        this.current = new byte[segmentSize];
+        this.next = new byte[segmentSize];
+        this.outputBuffer = header.clone();
+        this.outputLimit = header.length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (outputPos >= outputLimit) {
+            if (finished) {
+                return -1;
+            }
+            fill();
+        }
+        int n = Math.min(len, outputLimit - outputPos);
+        System.arraycopy(outputBuffer, outputPos, b, off, n);
+        outputPos += n;
+        return n;
+    }
+
+    private void fill() throws IOException {
+        if (currentLength < 0) {
+            currentLength = source.readNBytes(current, 0, segmentSize);
+            outputBuffer = new byte[segmentSize + SegmentedAesGcm.TAG_LENGTH];
+        }
+        int nextLength = currentLength < segmentSize ? 0 : source.readNBytes(next, 0, segmentSize);
+        boolean finalSegment = nextLength == 0;
+
+        try {
+            outputLimit = SegmentedAesGcm.encryptSegment(cipher, key, header, segmentIndex, finalSegment, current, currentLength, outputBuffer);
+            outputPos = 0;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt file stream.", e);
+        }
+
+        byte[] swap = current;
+        current = next;
+        next = swap;
+        currentLength = nextLength;
+        segmentIndex++;
+        finished = finalSegment;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
@@ -0,0 +1,12 @@
+package org.example.secureshare.mail;
+
+import java.io.IOException;
+
+/**
+ * Delivers one message. Called only by the outbox dispatcher, off the request path, so implementations may block;
+ * a thrown exception leaves the message queued for a retry.
+ */
+public interface EmailTransport {
+
+    void send(OutgoingEmail email) throws IOException;
+}
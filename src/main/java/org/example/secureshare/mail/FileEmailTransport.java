@@ -0,0 +1,64 @@
+package org.example.secureshare.mail;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.UUID;
+
+// Writes every message to <dir>/<timestamp>-<uuid>.eml instead of sending it, for offline runs and tests.
+// The files hold OTPs and decryption keys in the clear, so point dir at somewhere private.
+@Component
+@ConditionalOnProperty(name = "spring.app.mail.transport", havingValue = "file")
+public class FileEmailTransport implements EmailTransport {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path dir;
+
+    @Value("${spring.mail.properties.mail.smtp.from}")
+    private String senderEmail;
+
+    public FileEmailTransport(@Value("${spring.app.mail.file.dir}") String dir) throws IOException {
+        this.dir = Path.of(dir).toAbsolutePath().normalize();
+        Files.createDirectories(this.dir);
+    }
+
+    @Override
+    public void send(OutgoingEmail email) throws IOException {
+        String boundary = UUID.randomUUID().toString();
+        StringBuilder message = new StringBuilder()
+                .append("From: ").append(senderEmail).append("\r\n")
+                .append("To: ").append(email.getTo()).append("\r\n")
+                .append("Subject: ").append(email.getSubject()).append("\r\n")
+                .append("X-Template: ").append(email.getTemplate()).append("\r\n")
+                .append("MIME-Version: 1.0\r\n");
+        if (!email.hasAttachment()) {
+            message.append("Content-Type: text/plain; charset=UTF-8\r\n\r\n").append(email.getText()).append("\r\n");
+        } else {
+            message.append("Content-Type: multipart/mixed; boundary=\"").append(boundary).append("\"\r\n\r\n")
+                    .append("--").append(boundary).append("\r\n")
+                    .append("Content-Type: text/plain; charset=UTF-8\r\n\r\n").append(email.getText()).append("\r\n")
+                    .append("--").append(boundary).append("\r\n")
+                    .append("Content-Type: ").append(email.getAttachmentType()).append("\r\n")
+                    .append("Content-Disposition: attachment; filename=\"").append(email.getAttachmentFilename()).append("\"\r\n")
+                    .append("Content-Transfer-Encoding: base64\r\n\r\n")
+                    .append(Base64.getMimeEncoder().encodeToString(email.getAttachmentContent())).append("\r\n")
+                    .append("--").append(boundary).append("--\r\n");
+        }
+
+        // Written under a temporary name first, so anything watching the directory never reads a partial message
+        String name = LocalDateTime.now().format(FILE_TIMESTAMP) + "-" + UUID.randomUUID();
+        Path tempFile = dir.resolve(name + ".part");
+        Files.writeString(tempFile, message, StandardCharsets.UTF_8);
+        Files.move(tempFile, dir.resolve(name + ".eml"), StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.secureshare.mail;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// A plain-text message with at most one attachment; template names the kind of message, for logs and metrics
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutgoingEmail {
+
+    private String template;
+    private String to;
+    private String subject;
+    private String text;
+
+    private String attachmentFilename;
+    private String attachmentType;
+    private byte[] attachmentContent;
+
+    public OutgoingEmail(String template, String to, String subject, String text) {
+        this(template, to, subject, text, null, null, null);
+    }
+
+    public boolean hasAttachment() {
+        return attachmentContent != null;
+    }
+}
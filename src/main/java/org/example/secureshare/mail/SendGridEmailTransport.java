@@ -0,0 +1,108 @@
+package org.example.secureshare.mail;
+
+import com.sendgrid.Client;
+import com.sendgrid.Method;
+import com.sendgrid.Request;
+import com.sendgrid.Response;
+import com.sendgrid.SendGrid;
+import com.sendgrid.helpers.mail.Mail;
+import com.sendgrid.helpers.mail.objects.Attachments;
+import com.sendgrid.helpers.mail.objects.Content;
+import com.sendgrid.helpers.mail.objects.Email;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// One SendGrid client for the lifetime of the application, over a pooled HTTP client, so sends reuse kept-alive
+// connections instead of opening a new one per message. SendGrid and the pooled client are both thread-safe.
+@Component
+@ConditionalOnProperty(name = "spring.app.mail.transport", havingValue = "sendgrid", matchIfMissing = true)
+public class SendGridEmailTransport implements EmailTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendGridEmailTransport.class);
+
+    @Value("${spring.sendgrid.api-key}")
+    private String sendGridApiKey;
+
+    @Value("${spring.mail.properties.mail.smtp.from}")
+    private String senderEmail;
+
+    @Value("${spring.app.mail.sendgrid.maxConnections}")
+    private int maxConnections;
+
+    @Value("${spring.app.mail.sendgrid.connectTimeoutMs}")
+    private int connectTimeoutMs;
+
+    @Value("${spring.app.mail.sendgrid.socketTimeoutMs}")
+    private int socketTimeoutMs;
+
+    @Value("${spring.app.mail.sendgrid.idleTimeoutMs}")
+    private long idleTimeoutMs;
+
+    private CloseableHttpClient httpClient;
+    private SendGrid sendGrid;
+
+    @PostConstruct
+    public void init() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(socketTimeoutMs)
+                .setConnectionRequestTimeout(connectTimeoutMs)
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(DefaultConnectionKeepAliveStrategy.INSTANCE)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutMs, TimeUnit.MILLISECONDS)
+                .build();
+        sendGrid = new SendGrid(sendGridApiKey, new Client(httpClient));
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    @Override
+    public void send(OutgoingEmail email) throws IOException {
+        Mail mail = new Mail(new Email(senderEmail), email.getSubject(), new Email(email.getTo()),
+                new Content("text/plain", email.getText()));
+        if (email.hasAttachment()) {
+            Attachments attachment = new Attachments();
+            attachment.setContent(Base64.getEncoder().encodeToString(email.getAttachmentContent()));
+            attachment.setType(email.getAttachmentType());
+            attachment.setFilename(email.getAttachmentFilename());
+            attachment.setDisposition("attachment");
+            mail.addAttachments(attachment);
+        }
+
+        Request request = new Request();
+        request.setMethod(Method.POST);
+        request.setEndpoint("mail/send");
+        request.setBody(mail.build());
+        Response response = sendGrid.api(request);
+
+        logger.debug("SendGrid Response Code: {}", response.getStatusCode());
+
+        if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
+            throw new IOException("Failed to send email via SendGrid: " + response.getStatusCode() + " " + response.getBody());
+        }
+    }
+}
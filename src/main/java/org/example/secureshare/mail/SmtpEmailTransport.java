@@ -0,0 +1,46 @@
+package org.example.secureshare.mail;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.mail.MailException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Sends through the JavaMailSender Boot configures from spring.mail.host/port, e.g. a local MailHog or smtp4dev
+@Component
+@ConditionalOnProperty(name = "spring.app.mail.transport", havingValue = "smtp")
+public class SmtpEmailTransport implements EmailTransport {
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Value("${spring.mail.properties.mail.smtp.from}")
+    private String senderEmail;
+
+    @Override
+    public void send(OutgoingEmail email) throws IOException {
+        try {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, email.hasAttachment(), StandardCharsets.UTF_8.name());
+            helper.setFrom(senderEmail);
+            helper.setTo(email.getTo());
+            helper.setSubject(email.getSubject());
+            helper.setText(email.getText());
+            if (email.hasAttachment()) {
+                helper.addAttachment(email.getAttachmentFilename(), new ByteArrayResource(email.getAttachmentContent()),
+                        email.getAttachmentType());
+            }
+            mailSender.send(message);
+        } catch (MessagingException | MailException e) {
+            throw new IOException("Failed to send email via SMTP: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.secureshare.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// An email waiting to be sent. Rows are written in the transaction that decided to send the mail and deleted once
+// it has been delivered; rows that ran out of attempts stay behind with failed_at set until the retention purge.
+@Entity
+@Setter
+@Getter
+@NoArgsConstructor
+@Table(name = "email_outbox", indexes = @Index(name = "idx_email_outbox_next_attempt_at", columnList = "next_attempt_at"))
+public class EmailOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 64)
+    private String template;
+
+    // The serialized OutgoingEmail under the master key; messages carry OTPs and file keys
+    @Lob
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String payload;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    // Also serves as the lease of a claimed row: a node that dies mid-send leaves it to be claimed again
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "failed_at")
+    private LocalDateTime failedAt;
+
+    @Column(length = 1000)
+    private String lastError;
+}
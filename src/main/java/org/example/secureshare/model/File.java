@@ -4,9 +4,7 @@ import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.hibernate.annotations.JdbcTypeCode;
 
-import java.sql.Types;
 import java.time.LocalDateTime;
 
 @Entity
@@ -19,27 +17,6 @@ public class File {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Lob
-    @Column(columnDefinition = "BYTEA")
-    @JdbcTypeCode(Types.BINARY)
-    private byte[] encryptedData;
-
-    @Lob
-    @Column(columnDefinition = "TEXT")
-    private String encryptedAesKey;
-
-    @Lob
-    @Column(columnDefinition = "TEXT")
-    private String iv;
-
-    @Lob
-    @Column(columnDefinition = "TEXT")
-    private String authTag;
-
-    @Lob
-    @Column(columnDefinition = "TEXT")
-    private String signature;
-
     private String filename;
     private String description;
     private String category;
@@ -52,4 +29,18 @@ public class File {
     @Column(name = "original_file_id")
     private Long originalFileId;
 
-}
\ No newline at end of file
+    // Ciphertext and its envelope live in FileContent, which is shared by the owner and every recipient
+    @Column(name = "content_id")
+    private Long contentId;
+
+    // The content key wrapped for this row's owner
+    @Lob
+    @Column(columnDefinition = "TEXT")
+    private String encryptedAesKey;
+
+    // Scheme encryptedAesKey is wrapped under; null means RSA
+    @Enumerated(EnumType.STRING)
+    @Column(name = "key_scheme", length = 10)
+    private KeyScheme keyScheme;
+
+}
@@ -0,0 +1,52 @@
+package org.example.secureshare.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Setter
+@Getter
+@NoArgsConstructor
+@Table(name = "file_content")
+public class FileContent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Id of the ciphertext in the BlobStore
+    @Column(name = "blob_ref", length = 64)
+    private String blobRef;
+
+    @Lob
+    @Column(columnDefinition = "TEXT")
+    private String iv;
+
+    @Lob
+    @Column(columnDefinition = "TEXT")
+    private String authTag;
+
+    @Lob
+    @Column(columnDefinition = "TEXT")
+    private String signature;
+
+    // Scheme of the signer's key that produced signature; null means RSA
+    @Enumerated(EnumType.STRING)
+    @Column(name = "signature_scheme", length = 10)
+    private KeyScheme signatureScheme;
+
+    // 1 for the segmented container (see SegmentedAesGcm); null for single-shot GCM with the tag in authTag
+    @Column(name = "format_version")
+    private Integer formatVersion;
+
+    // Uploader whose key signed the metadata; every recipient verifies against this user
+    @Column(name = "signer_id")
+    private Long signerId;
+
+    // Number of file rows pointing at this content; the row and its blob are freed when it reaches zero
+    @Column(name = "ref_count")
+    private Integer refCount;
+
+}
@@ -0,0 +1,13 @@
+package org.example.secureshare.model;
+
+// How a user's keys wrap content keys and sign metadata. Rows written before schemes existed hold null, meaning RSA.
+public enum KeyScheme {
+    // RSA-2048 OAEP key wrapping and SHA256withRSA signatures
+    RSA,
+    // X25519 + HKDF-SHA256 + AES-GCM key wrapping and Ed25519 signatures
+    EC;
+
+    public static KeyScheme orDefault(KeyScheme scheme) {
+        return scheme != null ? scheme : RSA;
+    }
+}
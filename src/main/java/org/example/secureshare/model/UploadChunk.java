@@ -0,0 +1,29 @@
+package org.example.secureshare.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Setter
+@Getter
+@NoArgsConstructor
+@Table(name = "upload_chunk", uniqueConstraints = @UniqueConstraint(columnNames = {"session_id", "chunk_index"}))
+public class UploadChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "session_id")
+    private String sessionId;
+
+    @Column(name = "chunk_index")
+    private Integer chunkIndex;
+
+    // SHA-256 of the chunk's ciphertext; the blob id is derived from these on commit
+    @Column(length = 64)
+    private String ciphertextHash;
+
+}
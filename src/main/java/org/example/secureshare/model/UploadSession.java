@@ -0,0 +1,48 @@
+package org.example.secureshare.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// A resumable upload in progress. Chunks are encrypted as they arrive into a staged file, which becomes
+// the blob on commit.
+@Entity
+@Setter
+@Getter
+@NoArgsConstructor
+@Table(name = "upload_session")
+public class UploadSession {
+
+    @Id
+    private String id;
+
+    @Column(name = "owner_id")
+    private Long ownerId;
+
+    private String filename;
+    private String description;
+    private String category;
+    private String contentType;
+
+    private Long totalSize;
+    private Integer chunkSize;
+    private Integer chunkCount;
+
+    @Lob
+    @Column(columnDefinition = "TEXT")
+    private String iv;
+
+    // The file's AES key under the master key, so chunks can be encrypted without the owner's private key
+    @Lob
+    @Column(columnDefinition = "TEXT")
+    private String encryptedAesKey;
+
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+}
@@ -43,6 +43,13 @@ public class User {
     @JoinColumn(name = "role_id")
     private Role role;
 
+    // Null is treated as RSA; see KeyScheme
+    @Enumerated(EnumType.STRING)
+    @Column(name = "key_scheme", length = 10)
+    @JsonIgnore
+    private KeyScheme keyScheme;
+
+    // RSA key pair; kept after a move to EC so content wrapped or signed under RSA stays readable
     @Lob
     @Column(name = "public_key" , columnDefinition = "TEXT")
     @JsonIgnore
@@ -53,6 +60,37 @@ public class User {
     @JsonIgnore
     private String privateKey;
 
+    // X25519 key pair for key wrapping under the EC scheme
+    @Lob
+    @Column(name = "exchange_public_key", columnDefinition = "TEXT")
+    @JsonIgnore
+    private String exchangePublicKey;
+
+    @Lob
+    @Column(name = "exchange_private_key", columnDefinition = "TEXT")
+    @JsonIgnore
+    private String exchangePrivateKey;
+
+    // Ed25519 key pair for metadata signatures under the EC scheme
+    @Lob
+    @Column(name = "signing_public_key", columnDefinition = "TEXT")
+    @JsonIgnore
+    private String signingPublicKey;
+
+    @Lob
+    @Column(name = "signing_private_key", columnDefinition = "TEXT")
+    @JsonIgnore
+    private String signingPrivateKey;
+
+    // Bumped whenever the key pair changes so cached key material is never reused across versions
+    @Column(name = "key_version")
+    @JsonIgnore
+    private Integer keyVersion;
+
+    // Bumped when the password changes; tokens carrying an older version are no longer accepted
+    @Column(name = "credential_version")
+    @JsonIgnore
+    private Integer credentialVersion;
 
     public User(String username, String email, String password) {
         this.username = username;
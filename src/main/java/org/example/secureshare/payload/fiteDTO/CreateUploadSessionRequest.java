@@ -0,0 +1,16 @@
+package org.example.secureshare.payload.fiteDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreateUploadSessionRequest {
+    private String filename;
+    private String description;
+    private String category;
+    private String contentType;
+    private Long size;
+}
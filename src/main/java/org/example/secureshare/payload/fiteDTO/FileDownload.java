@@ -0,0 +1,23 @@
+package org.example.secureshare.payload.fiteDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.function.BiFunction;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileDownload {
+    private String filename;
+    private String contentType;
+    private Long contentLength;
+    private StreamingResponseBody body;
+    // Body for an inclusive byte range; null when the stored format can only be served whole
+    private BiFunction<Long, Long, StreamingResponseBody> rangeBody;
+    private String etag;
+    // Queues the decryption keys for the requester; null when the download does not send them
+    private Runnable sendKeys;
+}
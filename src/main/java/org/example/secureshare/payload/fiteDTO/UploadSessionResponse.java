@@ -0,0 +1,21 @@
+package org.example.secureshare.payload.fiteDTO;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionResponse {
+    private String sessionId;
+    private Long size;
+    private Integer chunkSize;
+    private Integer chunkCount;
+    // Chunk i covers bytes [i * chunkSize, min((i + 1) * chunkSize, size))
+    private List<Integer> receivedChunks;
+    private LocalDateTime expiresAt;
+}
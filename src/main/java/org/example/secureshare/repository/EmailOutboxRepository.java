@@ -0,0 +1,44 @@
+package org.example.secureshare.repository;
+
+import org.example.secureshare.model.EmailOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepository extends JpaRepository<EmailOutbox, Long> {
+
+    // Rows another node has locked are skipped rather than waited for
+    @Query(value = "SELECT id FROM email_outbox WHERE failed_at IS NULL AND next_attempt_at <= ?1 " +
+            "ORDER BY id LIMIT ?2 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<Long> lockDueIds(LocalDateTime now, int limit);
+
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.attempts = e.attempts + 1, e.nextAttemptAt = ?2 WHERE e.id IN ?1")
+    void lease(List<Long> ids, LocalDateTime leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM EmailOutbox e WHERE e.id = ?1")
+    void deleteSent(Long id);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.nextAttemptAt = ?2, e.lastError = ?3 WHERE e.id = ?1")
+    void scheduleRetry(Long id, LocalDateTime nextAttemptAt, String lastError);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE EmailOutbox e SET e.failedAt = ?2, e.lastError = ?3 WHERE e.id = ?1")
+    void markFailed(Long id, LocalDateTime failedAt, String lastError);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM EmailOutbox e WHERE e.failedAt < ?1")
+    int deleteFailedBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,15 @@
+package org.example.secureshare.repository;
+
+import org.example.secureshare.model.KeyScheme;
+
+// Closed projection of FileContent used on the download paths
+public interface FileContentEnvelopeView {
+    Long getId();
+    String getBlobRef();
+    String getIv();
+    String getAuthTag();
+    String getSignature();
+    KeyScheme getSignatureScheme();
+    Long getSignerId();
+    Integer getFormatVersion();
+}
@@ -0,0 +1,37 @@
+package org.example.secureshare.repository;
+
+import org.example.secureshare.model.FileContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileContentRepository extends JpaRepository<FileContent, Long>, FileContentRepositoryCustom {
+
+    Optional<FileContentEnvelopeView> findEnvelopeById(Long contentId);
+
+    boolean existsByBlobRef(String blobRef);
+
+    @Query("SELECT c.blobRef FROM FileContent c WHERE c.id IN ?1 AND c.blobRef IS NOT NULL")
+    List<String> findBlobRefsByIdIn(List<Long> contentIds);
+
+    // Only content that still has a reference can gain one, so a share never resurrects freed content
+    @Modifying
+    @Query("UPDATE FileContent c SET c.refCount = c.refCount + 1 WHERE c.id = ?1 AND c.refCount > 0")
+    int incrementRefCount(Long contentId);
+
+    @Modifying
+    @Query("UPDATE FileContent c SET c.refCount = c.refCount - ?2 WHERE c.id = ?1")
+    int decrementRefCount(Long contentId, int count);
+
+    @Query("SELECT c.id FROM FileContent c WHERE c.id IN ?1 AND c.refCount <= 0")
+    List<Long> findUnreferencedIdsByIdIn(List<Long> contentIds);
+
+    @Modifying
+    @Query("DELETE FROM FileContent c WHERE c.id IN ?1")
+    void deleteAllByIdIn(List<Long> contentIds);
+}
@@ -0,0 +1,20 @@
+package org.example.secureshare.repository;
+
+import java.io.InputStream;
+import java.util.List;
+
+// Access to ciphertext still stored inline in file_content.encrypted_data by versions before the BlobStore
+public interface FileContentRepositoryCustom {
+
+    boolean hasLegacyEncryptedDataColumn();
+
+    List<Long> findLegacyContentIds(int limit);
+
+    long getLegacyEncryptedDataLength(Long contentId);
+
+    InputStream openLegacyEncryptedData(Long contentId);
+
+    boolean moveLegacyEncryptedDataToBlob(Long contentId, String blobRef);
+
+    void dropLegacyEncryptedDataColumn();
+}
@@ -0,0 +1,113 @@
+package org.example.secureshare.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public class FileContentRepositoryImpl implements FileContentRepositoryCustom {
+
+    // Size of each substring() fetch when reading ciphertext back out of the BYTEA column
+    private static final int READ_SLICE_SIZE = 1024 * 1024;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public boolean hasLegacyEncryptedDataColumn() {
+        Integer columns = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = current_schema() AND table_name = 'file_content' AND column_name = 'encrypted_data'",
+                Integer.class);
+        return columns != null && columns > 0;
+    }
+
+    @Override
+    public List<Long> findLegacyContentIds(int limit) {
+        return jdbcTemplate.queryForList(
+                "SELECT id FROM file_content WHERE blob_ref IS NULL AND encrypted_data IS NOT NULL ORDER BY id LIMIT ?",
+                Long.class, limit);
+    }
+
+    @Override
+    public long getLegacyEncryptedDataLength(Long contentId) {
+        Long length = jdbcTemplate.queryForObject(
+                "SELECT octet_length(encrypted_data) FROM file_content WHERE id = ?", Long.class, contentId);
+        if (length == null) {
+            throw new NoSuchElementException("No encrypted data stored for content ID: " + contentId);
+        }
+        return length;
+    }
+
+    // The driver materialises a whole BYTEA value per row, so the column is read back in slices
+    @Override
+    public InputStream openLegacyEncryptedData(Long contentId) {
+        return new SlicedByteaInputStream(contentId, getLegacyEncryptedDataLength(contentId));
+    }
+
+    // Only claims rows that have not been moved yet, so concurrent migrations are harmless
+    @Override
+    public boolean moveLegacyEncryptedDataToBlob(Long contentId, String blobRef) {
+        return jdbcTemplate.update(
+                "UPDATE file_content SET blob_ref = ?, encrypted_data = NULL WHERE id = ? AND blob_ref IS NULL",
+                blobRef, contentId) == 1;
+    }
+
+    @Override
+    public void dropLegacyEncryptedDataColumn() {
+        jdbcTemplate.execute("ALTER TABLE file_content DROP COLUMN IF EXISTS encrypted_data");
+    }
+
+    private class SlicedByteaInputStream extends InputStream {
+
+        private final Long contentId;
+        private final long length;
+        private long position;
+        private byte[] slice = new byte[0];
+        private int slicePos;
+
+        SlicedByteaInputStream(Long contentId, long length) {
+            this.contentId = contentId;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (slicePos >= slice.length) {
+                if (position >= length) {
+                    return -1;
+                }
+                fetchNextSlice();
+            }
+            int n = Math.min(len, slice.length - slicePos);
+            System.arraycopy(slice, slicePos, b, off, n);
+            slicePos += n;
+            return n;
+        }
+
+        private void fetchNextSlice() throws IOException {
+            int size = (int) Math.min(READ_SLICE_SIZE, length - position);
+            byte[] next = jdbcTemplate.queryForObject(
+                    "SELECT substring(encrypted_data FROM ? FOR ?) FROM file_content WHERE id = ?",
+                    byte[].class, (int) (position + 1), size, contentId);
+            if (next == null || next.length != size) {
+                throw new IOException("Encrypted data for content ID " + contentId + " changed while it was being read.");
+            }
+            slice = next;
+            slicePos = 0;
+            position += size;
+        }
+    }
+}
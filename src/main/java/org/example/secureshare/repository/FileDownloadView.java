@@ -0,0 +1,48 @@
+package org.example.secureshare.repository;
+
+import org.example.secureshare.model.KeyScheme;
+import org.example.secureshare.model.User;
+
+// Everything a download needs in one row: the file, its content envelope, the requester's wrapped private keys
+// and the signer's public keys. Content and signer columns are null when those rows are missing.
+public interface FileDownloadView extends FileContentEnvelopeView {
+    Long getFileId();
+    Long getOwnerId();
+    String getFilename();
+    String getDescription();
+    String getCategory();
+    String getContentType();
+    String getEncryptedAesKey();
+    KeyScheme getKeyScheme();
+
+    Long getRequesterId();
+    String getRequesterEmail();
+    KeyScheme getRequesterKeyScheme();
+    Integer getRequesterKeyVersion();
+    String getRequesterPrivateKey();
+    String getRequesterExchangePrivateKey();
+
+    Long getSignerUserId();
+    String getSignerPublicKey();
+    String getSignerSigningPublicKey();
+
+    // The users below are detached and only carry key material for UserKeyService; they must never be saved
+    default User requester() {
+        User requester = new User();
+        requester.setUserId(getRequesterId());
+        requester.setEmail(getRequesterEmail());
+        requester.setKeyScheme(getRequesterKeyScheme());
+        requester.setKeyVersion(getRequesterKeyVersion());
+        requester.setPrivateKey(getRequesterPrivateKey());
+        requester.setExchangePrivateKey(getRequesterExchangePrivateKey());
+        return requester;
+    }
+
+    default User signer() {
+        User signer = new User();
+        signer.setUserId(getSignerUserId());
+        signer.setPublicKey(getSignerPublicKey());
+        signer.setSigningPublicKey(getSignerSigningPublicKey());
+        return signer;
+    }
+}
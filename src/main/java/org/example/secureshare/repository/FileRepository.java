@@ -1,11 +1,16 @@
 package org.example.secureshare.repository;
 
 import org.example.secureshare.model.File;
+import org.example.secureshare.model.KeyScheme;
+import org.example.secureshare.payload.fiteDTO.FetchFileResponse;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.Optional;
 
 
 @Repository
@@ -22,4 +27,28 @@ public interface FileRepository extends JpaRepository<File, Long>, JpaSpecificat
 
     @Query("SELECT f.ownerId FROM File f WHERE f.originalFileId = ?1 AND f.id = ?1")
     Long findByIdAndOriginalFileId(Long originalFileId);
-}
\ No newline at end of file
+
+    @Query(value = "SELECT new org.example.secureshare.payload.fiteDTO.FetchFileResponse(f.id, f.filename, f.description, f.category, f.timestamp) " +
+            "FROM File f WHERE f.ownerId = ?1 AND (?2 IS NULL OR LOWER(f.category) LIKE ?2 OR LOWER(f.description) LIKE ?2 OR LOWER(f.filename) LIKE ?2)",
+            countQuery = "SELECT COUNT(f) FROM File f WHERE f.ownerId = ?1 AND (?2 IS NULL OR LOWER(f.category) LIKE ?2 OR LOWER(f.description) LIKE ?2 OR LOWER(f.filename) LIKE ?2)")
+    Page<FetchFileResponse> findFileSummaries(Long ownerId, String likeKeyword, Pageable pageable);
+
+    // One statement for the download paths instead of separate user, file, content and signer lookups
+    @Query("SELECT c.id AS id, c.blobRef AS blobRef, c.iv AS iv, c.authTag AS authTag, c.signature AS signature, " +
+            "c.signatureScheme AS signatureScheme, c.signerId AS signerId, c.formatVersion AS formatVersion, " +
+            "f.id AS fileId, f.ownerId AS ownerId, f.filename AS filename, f.description AS description, f.category AS category, " +
+            "f.contentType AS contentType, f.encryptedAesKey AS encryptedAesKey, f.keyScheme AS keyScheme, " +
+            "r.userId AS requesterId, r.email AS requesterEmail, r.keyScheme AS requesterKeyScheme, r.keyVersion AS requesterKeyVersion, " +
+            "r.privateKey AS requesterPrivateKey, r.exchangePrivateKey AS requesterExchangePrivateKey, " +
+            "s.userId AS signerUserId, s.publicKey AS signerPublicKey, s.signingPublicKey AS signerSigningPublicKey " +
+            "FROM File f JOIN User r ON r.username = ?2 " +
+            "LEFT JOIN FileContent c ON c.id = f.contentId " +
+            "LEFT JOIN User s ON s.userId = c.signerId " +
+            "WHERE f.id = ?1")
+    Optional<FileDownloadView> findDownloadById(Long fileId, String requesterUsername);
+
+    // Rows whose content key is still wrapped under an older scheme than the one their owner has moved to
+    @Query("SELECT f.id FROM File f JOIN User u ON u.userId = f.ownerId " +
+            "WHERE u.keyScheme = ?1 AND (f.keyScheme IS NULL OR f.keyScheme <> ?1) AND f.id > ?2 ORDER BY f.id")
+    List<Long> findIdsWrappedBehindOwner(KeyScheme ownerScheme, Long afterId, Pageable pageable);
+}
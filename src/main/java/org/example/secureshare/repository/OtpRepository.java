@@ -2,6 +2,21 @@ package org.example.secureshare.repository;
 
 import org.example.secureshare.model.Otp;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 
 public interface OtpRepository extends JpaRepository<Otp,String> {
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Otp o WHERE o.email = ?1 AND o.otpCode = ?2 AND o.expirationTime >= ?3")
+    int deleteIfValid(String email, String otpCode, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Otp o WHERE o.expirationTime < ?1")
+    int deleteExpired(LocalDateTime now);
 }
@@ -1,6 +1,9 @@
 package org.example.secureshare.repository;
 
 import org.example.secureshare.model.SharedFile;
+import org.example.secureshare.payload.sharedfileDTO.SharedFileResponse;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
@@ -20,4 +23,31 @@ public interface SharedFileRepository extends JpaRepository<SharedFile, Long>, J
     @Modifying
     @Query("Delete FROM SharedFile sf WHERE sf.newFileId = ?1")
     void deleteByNewFileId(Long fileId);
+
+    // Listings resolve both usernames in the page query itself, so the statement count does not grow with the page
+    @Query(value = "SELECT new org.example.secureshare.payload.sharedfileDTO.SharedFileResponse(s.username, r.username, sf.filename, sf.category, " +
+            "CASE WHEN LOWER(sf.isSensitive) = 'true' THEN true ELSE false END, sf.sharedAt) " +
+            "FROM SharedFile sf JOIN User s ON s.userId = sf.senderId JOIN User r ON r.userId = sf.recipientId " +
+            "WHERE s.username = ?1 AND (?2 IS NULL OR sf.isSensitive = ?2) " +
+            "AND (?3 IS NULL OR LOWER(r.username) LIKE ?3 OR LOWER(sf.filename) LIKE ?3 OR LOWER(sf.category) LIKE ?3)",
+            countQuery = "SELECT COUNT(sf) FROM SharedFile sf JOIN User s ON s.userId = sf.senderId JOIN User r ON r.userId = sf.recipientId " +
+                    "WHERE s.username = ?1 AND (?2 IS NULL OR sf.isSensitive = ?2) " +
+                    "AND (?3 IS NULL OR LOWER(r.username) LIKE ?3 OR LOWER(sf.filename) LIKE ?3 OR LOWER(sf.category) LIKE ?3)")
+    Page<SharedFileResponse> findSharedBySender(String senderUsername, String sensitive, String likeKeyword, Pageable pageable);
+
+    @Query(value = "SELECT new org.example.secureshare.payload.sharedfileDTO.SharedFileResponse(s.username, r.username, sf.filename, sf.category, " +
+            "CASE WHEN LOWER(sf.isSensitive) = 'true' THEN true ELSE false END, sf.sharedAt) " +
+            "FROM SharedFile sf JOIN User s ON s.userId = sf.senderId JOIN User r ON r.userId = sf.recipientId " +
+            "WHERE r.username = ?1 AND (?2 IS NULL OR sf.isSensitive = ?2) " +
+            "AND (?3 IS NULL OR LOWER(s.username) LIKE ?3 OR LOWER(sf.filename) LIKE ?3 OR LOWER(sf.category) LIKE ?3)",
+            countQuery = "SELECT COUNT(sf) FROM SharedFile sf JOIN User s ON s.userId = sf.senderId JOIN User r ON r.userId = sf.recipientId " +
+                    "WHERE r.username = ?1 AND (?2 IS NULL OR sf.isSensitive = ?2) " +
+                    "AND (?3 IS NULL OR LOWER(s.username) LIKE ?3 OR LOWER(sf.filename) LIKE ?3 OR LOWER(sf.category) LIKE ?3)")
+    Page<SharedFileResponse> findSharedToRecipient(String recipientUsername, String sensitive, String likeKeyword, Pageable pageable);
+
+    @Query(value = "SELECT COALESCE(r.username, 'Unknown') FROM SharedFile sf LEFT JOIN User r ON r.userId = sf.recipientId " +
+            "WHERE sf.originalFileId = ?1 AND (?2 IS NULL OR LOWER(r.username) LIKE ?2)",
+            countQuery = "SELECT COUNT(sf) FROM SharedFile sf LEFT JOIN User r ON r.userId = sf.recipientId " +
+                    "WHERE sf.originalFileId = ?1 AND (?2 IS NULL OR LOWER(r.username) LIKE ?2)")
+    Page<String> findRecipientUsernames(Long originalFileId, String likeKeyword, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package org.example.secureshare.repository;
+
+import org.example.secureshare.model.UploadChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadChunkRepository extends JpaRepository<UploadChunk, Long> {
+
+    Optional<UploadChunk> findBySessionIdAndChunkIndex(String sessionId, Integer chunkIndex);
+
+    List<UploadChunk> findBySessionIdOrderByChunkIndex(String sessionId);
+
+    @Query("SELECT c.chunkIndex FROM UploadChunk c WHERE c.sessionId = ?1 ORDER BY c.chunkIndex")
+    List<Integer> findChunkIndexesBySessionId(String sessionId);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UploadChunk c WHERE c.sessionId = ?1")
+    void deleteBySessionId(String sessionId);
+}
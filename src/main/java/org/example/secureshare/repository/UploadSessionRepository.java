@@ -0,0 +1,29 @@
+package org.example.secureshare.repository;
+
+import jakarta.persistence.LockModeType;
+import org.example.secureshare.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<UploadSession> findWithLockById(String sessionId);
+
+    @Query("SELECT s.id FROM UploadSession s WHERE s.expiresAt < ?1")
+    List<String> findExpiredIds(LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE UploadSession s SET s.expiresAt = ?2 WHERE s.id = ?1")
+    void extendExpiry(String sessionId, LocalDateTime expiresAt);
+}
@@ -1,10 +1,13 @@
 package org.example.secureshare.repository;
 
+import jakarta.persistence.LockModeType;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import org.example.secureshare.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
 
 import java.util.Optional;
 
@@ -17,4 +20,10 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByEmail(@NotBlank @Size(max = 50) @Email String email);
 
     Optional<User> findByEmail(String email);
+
+    @Query("SELECT COALESCE(u.credentialVersion, 0) FROM User u WHERE u.userId = ?1")
+    Optional<Integer> findCredentialVersionById(Long userId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<User> findWithLockByUserId(Long userId);
 }
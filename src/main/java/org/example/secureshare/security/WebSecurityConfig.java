@@ -1,5 +1,6 @@
 package org.example.secureshare.security;
 
+import jakarta.servlet.DispatcherType;
 import org.example.secureshare.security.jwt.AuthEntryPointJwt;
 import org.example.secureshare.security.jwt.AuthTokenFilter;
 import org.example.secureshare.security.services.UserDetailsServiceImpl;
@@ -62,6 +63,7 @@ public class WebSecurityConfig {
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(authorizeRequests ->
                         authorizeRequests
+                                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll()
                                 .requestMatchers("/").permitAll()
                                 .requestMatchers("/api/auth/authenticate/signup").permitAll()
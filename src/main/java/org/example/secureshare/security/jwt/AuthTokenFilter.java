@@ -1,6 +1,10 @@
 package org.example.secureshare.security.jwt;
 
+import org.example.secureshare.security.services.CredentialVersionService;
+import org.example.secureshare.security.services.RevokedTokenService;
+import org.example.secureshare.security.services.UserDetailsImpl;
 import org.example.secureshare.security.services.UserDetailsServiceImpl;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -26,6 +30,12 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     @Autowired
     private UserDetailsServiceImpl userDetailsService;
 
+    @Autowired
+    private CredentialVersionService credentialVersionService;
+
+    @Autowired
+    private RevokedTokenService revokedTokenService;
+
     private static final Logger logger = LoggerFactory.getLogger(AuthTokenFilter.class);
 
     @Override
@@ -35,9 +45,13 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         logger.debug("AuthToken called for URI: {}", request.getRequestURI());
         String jwt = parseJwt(request);
         try {
-            if (jwt != null && jwtUtils.validateToken(jwt)) {
-                String username = jwtUtils.getUsernameFromToken(jwt);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            Claims claims = jwt != null ? jwtUtils.parseClaims(jwt) : null;
+            if (claims != null) {
+                UserDetails userDetails = loadPrincipal(claims);
+                if (userDetails == null) {
+                    filterChain.doFilter(request, response);
+                    return;
+                }
                 UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -50,6 +64,23 @@ public class AuthTokenFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    // The principal comes from the claims; only tokens issued before the claims existed still load the user
+    private UserDetails loadPrincipal(Claims claims) {
+        if (revokedTokenService.isRevoked(claims.getId())) {
+            logger.debug("Rejected a signed-out token for {}", claims.getSubject());
+            return null;
+        }
+        UserDetailsImpl principal = jwtUtils.getPrincipalFromClaims(claims);
+        if (principal == null) {
+            return userDetailsService.loadUserByUsername(claims.getSubject());
+        }
+        if (!credentialVersionService.isCurrent(principal.getId(), principal.getCredentialVersion())) {
+            logger.debug("Rejected token with a revoked credential version for user ID {}", principal.getId());
+            return null;
+        }
+        return principal;
+    }
+
     private String parseJwt(HttpServletRequest request) {
         String jwt = jwtUtils.getJwtFromCookie(request);
         if (jwt != null && !jwt.isEmpty()) {
@@ -1,24 +1,33 @@
 package org.example.secureshare.security.jwt;
 
+import org.example.secureshare.security.services.CredentialVersionService;
 import org.example.secureshare.security.services.UserDetailsImpl;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SecurityException;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseCookie;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.WebUtils;
 
 import javax.crypto.SecretKey;
 import java.security.Key;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 
 @Component
@@ -26,6 +35,11 @@ public class JwtUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
+    // Enough to build the principal without loading the user
+    private static final String CLAIM_USER_ID = "uid";
+    private static final String CLAIM_ROLE = "role";
+    private static final String CLAIM_CREDENTIAL_VERSION = "cv";
+
     @Value("${spring.app.jwtExpirationMs}")
     private int jwtExpirationsMs;
     @Value("${spring.app.jwtSecret}")
@@ -34,6 +48,16 @@ public class JwtUtils {
     @Value("${spring.secure.app.jwtCookieName}")
     private String jwtCookie;
 
+    // Both are immutable and thread-safe, so every request shares them
+    private SecretKey signingKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    public void init() {
+        signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        parser = Jwts.parser().verifyWith(signingKey).build();
+    }
+
     //Getting JWT Token from Header
     public String getJwtFromHeader(HttpServletRequest request) {
         String header = request.getHeader("Authorization");
@@ -55,8 +79,16 @@ public class JwtUtils {
         }
     }
 
-    public String generateTokenFromUserName(String username){
-        return Jwts.builder().subject(username)
+    public String generateTokenFromUser(UserDetailsImpl userPrincipal) {
+        String role = userPrincipal.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .findFirst()
+                .orElse(null);
+        return Jwts.builder().subject(userPrincipal.getUsername())
+                .id(UUID.randomUUID().toString())
+                .claim(CLAIM_USER_ID, userPrincipal.getId())
+                .claim(CLAIM_ROLE, role)
+                .claim(CLAIM_CREDENTIAL_VERSION, CredentialVersionService.versionOf(userPrincipal.getCredentialVersion()))
                 .issuedAt(new Date())
                 .expiration(new Date(new Date().getTime()+jwtExpirationsMs))
                 .signWith(key())
@@ -65,7 +97,7 @@ public class JwtUtils {
 
     //Generating token from cookie
     public ResponseCookie generateTokenFromCookie(UserDetailsImpl userPrincipal) {
-        String jwt = generateTokenFromUserName(userPrincipal.getUsername());
+        String jwt = generateTokenFromUser(userPrincipal);
         return ResponseCookie.from(jwtCookie, jwt)
                 .httpOnly(true)
                 .path("/api")
@@ -82,34 +114,10 @@ public class JwtUtils {
                 .build();
     }
 
-    //Getting username from a token
-    public String getUsernameFromToken(String token) {
+    // Verifies the token once and returns its claims, or null when it is not acceptable
+    public Claims parseClaims(String authToken) {
         try {
-            return Jwts.parser()
-                    .verifyWith((SecretKey) key())
-                    .build().parseSignedClaims(token)
-                    .getPayload()
-                    .getSubject();
-        } catch (Exception e) {
-            logger.error("Cannot parse JWT token: {}", token, e);
-            return null;
-        }
-    }
-
-    //Generating key for signing
-    public Key key() {
-        return Keys.hmacShaKeyFor(
-                Decoders.BASE64.decode(jwtSecret));
-    }
-
-    //Validating authToken
-    public boolean validateToken(String authToken) {
-        try{
-            System.out.println("Validating");
-            Jwts.parser()
-                    .verifyWith((SecretKey) key())
-                    .build().parseSignedClaims(authToken);
-            return true;
+            return parser.parseSignedClaims(authToken).getPayload();
         }
         catch (MalformedJwtException exception){
             logger.error("Invalid JWT token: {}", exception.getMessage());
@@ -120,11 +128,32 @@ public class JwtUtils {
         catch (UnsupportedJwtException exception){
             logger.error("JWT token is unsupported: {}", exception.getMessage());
         }
+        catch (SecurityException exception){
+            logger.error("Invalid JWT signature: {}", exception.getMessage());
+        }
         catch (IllegalArgumentException exception){
             logger.error("JWT claims string is empty: {}", exception.getMessage());
         }
-        return false;
+        return null;
     }
 
+    // Builds the principal from the token's claims alone; null for tokens issued before the claims existed
+    public UserDetailsImpl getPrincipalFromClaims(Claims claims) {
+        Long userId = claims.get(CLAIM_USER_ID, Long.class);
+        String role = claims.get(CLAIM_ROLE, String.class);
+        Integer credentialVersion = claims.get(CLAIM_CREDENTIAL_VERSION, Integer.class);
+        if (userId == null || role == null || credentialVersion == null) {
+            return null;
+        }
+        UserDetailsImpl principal = new UserDetailsImpl(userId, claims.getSubject(), null, null,
+                List.of(new SimpleGrantedAuthority(role)));
+        principal.setCredentialVersion(credentialVersion);
+        return principal;
+    }
+
+    //Key for signing, decoded once at startup
+    public Key key() {
+        return signingKey;
+    }
 
 }
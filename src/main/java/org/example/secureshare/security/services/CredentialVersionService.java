@@ -0,0 +1,69 @@
+package org.example.secureshare.security.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.secureshare.model.User;
+import org.example.secureshare.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+// Revocation check for stateless tokens: a token is only accepted while its credential version matches the user's.
+// Current versions are cached briefly, so the filter touches the user table at most once per user per TTL.
+// Changes made on this node take effect immediately; other nodes pick them up within the TTL.
+@Service
+public class CredentialVersionService {
+
+    // Cached for users that no longer exist, so their tokens never match
+    private static final int DELETED = -1;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private final Cache<Long, Integer> versions;
+
+    public CredentialVersionService(@Value("${spring.app.jwt.credentialVersionTtlMs}") long ttlMs,
+                                    @Value("${spring.app.jwt.credentialVersionMaxSize}") long maxSize,
+                                    MeterRegistry meterRegistry) {
+        this.versions = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(ttlMs))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, versions, "credentialVersions");
+    }
+
+    public boolean isCurrent(Long userId, Integer tokenVersion) {
+        int current = versions.get(userId, id -> userRepository.findCredentialVersionById(id).orElse(DELETED));
+        return current != DELETED && current == versionOf(tokenVersion);
+    }
+
+    // Invalidates every token issued to the user so far; the caller saves the user
+    public void revokeTokens(User user) {
+        user.setCredentialVersion(versionOf(user.getCredentialVersion()) + 1);
+        evictAfterCommit(user.getUserId());
+    }
+
+    public void evictAfterCommit(Long userId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            versions.invalidate(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                versions.invalidate(userId);
+            }
+        });
+    }
+
+    public static int versionOf(Integer credentialVersion) {
+        return credentialVersion != null ? credentialVersion : 0;
+    }
+}
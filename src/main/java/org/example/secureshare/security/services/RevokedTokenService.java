@@ -0,0 +1,101 @@
+package org.example.secureshare.security.services;
+
+import jakarta.annotation.PostConstruct;
+import org.example.secureshare.model.RevokedToken;
+import org.example.secureshare.repository.RevokedTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Signed-out tokens, stored in the revoked_token table and mirrored in memory so the token filter never queries it.
+// A Bloom filter answers the common not-revoked case; only its hits are confirmed against the exact set.
+// Other nodes' revocations arrive with the next refresh; rows expire together with the tokens they name.
+@Service
+public class RevokedTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevokedTokenService.class);
+
+    // Re-reads rows from slightly before the last refresh, so one that committed late is not skipped
+    private static final long REFRESH_OVERLAP_SECONDS = 60;
+
+    @Autowired
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Value("${spring.app.jwt.revocation.expectedTokens}")
+    private int expectedTokens;
+
+    @Value("${spring.app.jwt.revocation.falsePositiveRate}")
+    private double falsePositiveRate;
+
+    private final Map<String, LocalDateTime> revoked = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+    private volatile LocalDateTime lastRefresh;
+
+    @PostConstruct
+    public void init() {
+        bloomFilter = newBloomFilter();
+        lastRefresh = LocalDateTime.MIN;
+        refresh();
+    }
+
+    public boolean isRevoked(String jti) {
+        return jti != null && bloomFilter.mightContain(jti) && revoked.containsKey(jti);
+    }
+
+    // Tokens issued before they carried a jti cannot be revoked one by one; a password reset still revokes them
+    public void revoke(String jti, Date expiration) {
+        if (jti == null || expiration == null) {
+            return;
+        }
+        LocalDateTime expiresAt = LocalDateTime.ofInstant(expiration.toInstant(), ZoneId.systemDefault());
+        revokedTokenRepository.save(new RevokedToken(jti, expiresAt, LocalDateTime.now()));
+        remember(jti, expiresAt);
+    }
+
+    @Scheduled(initialDelayString = "${spring.app.jwt.revocation.refreshMs}", fixedDelayString = "${spring.app.jwt.revocation.refreshMs}")
+    public void refresh() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime since = lastRefresh.equals(LocalDateTime.MIN) ? lastRefresh : lastRefresh.minusSeconds(REFRESH_OVERLAP_SECONDS);
+        List<RevokedToken> tokens = revokedTokenRepository.findRevokedSince(since, now);
+        tokens.forEach(token -> remember(token.getJti(), token.getExpiresAt()));
+        lastRefresh = now;
+    }
+
+    // A Bloom filter cannot forget, so pruning rebuilds it from what is left in the exact set
+    @Scheduled(initialDelayString = "${spring.app.jwt.revocation.pruneIntervalMs}", fixedDelayString = "${spring.app.jwt.revocation.pruneIntervalMs}")
+    public void pruneExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        int deleted = revokedTokenRepository.deleteExpired(now);
+        revoked.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+
+        BloomFilter rebuilt = newBloomFilter();
+        revoked.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+        // Catches tokens revoked while the new filter was being filled; they may have gone into the old one
+        revoked.keySet().forEach(rebuilt::put);
+
+        if (deleted > 0) {
+            logger.info("Pruned {} expired revoked tokens", deleted);
+        }
+    }
+
+    // The exact set is written first, so a token is never in the Bloom filter without being in the set
+    private void remember(String jti, LocalDateTime expiresAt) {
+        revoked.put(jti, expiresAt);
+        bloomFilter.put(jti);
+    }
+
+    private BloomFilter newBloomFilter() {
+        return new BloomFilter(Math.max(expectedTokens, revoked.size() * 2), falsePositiveRate);
+    }
+}
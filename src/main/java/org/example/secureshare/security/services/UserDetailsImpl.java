@@ -26,6 +26,9 @@ public class UserDetailsImpl implements UserDetails {
 
     private Collection<? extends GrantedAuthority> authorities;
 
+    // Carried in the JWT so the filter can reject tokens issued before a password change
+    private Integer credentialVersion;
+
     public UserDetailsImpl(Long id, String username, String email, String password,
                            Collection<? extends GrantedAuthority> authorities) {
         this.id = id;
@@ -41,13 +44,15 @@ public class UserDetailsImpl implements UserDetails {
             new SimpleGrantedAuthority(user.getRole().getRoleName().name())
         );
 
-        return new UserDetailsImpl(
+        UserDetailsImpl userDetails = new UserDetailsImpl(
                 user.getUserId(),
                 user.getUsername(),
                 user.getEmail(),
                 user.getPassword(),
                 authorities
         );
+        userDetails.setCredentialVersion(user.getCredentialVersion());
+        return userDetails;
     }
 
 
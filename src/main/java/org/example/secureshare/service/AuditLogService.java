@@ -1,7 +1,6 @@
 package org.example.secureshare.service;
 
 import org.example.secureshare.model.AuditLog;
-import org.example.secureshare.model.User;
 import org.example.secureshare.payload.auditDTO.AuditLogResponse;
 import org.example.secureshare.payload.auditDTO.AuditLogsResponse;
 import org.example.secureshare.repository.AuditLogRepository;
@@ -25,29 +24,28 @@ public class AuditLogService {
     @Autowired
     private AuthUtil authUtil;
 
+    @Autowired
+    private AuditLogWriter auditLogWriter;
 
-    @Transactional
+    // Written in the background; the event is stamped now, on the request thread
     public void logAction(Long userId,String action, String filename) {
-        AuditLog log = new AuditLog(userId, action, filename);
-        auditLogRepository.save(log);
+        auditLogWriter.write(new AuditLog(userId, action, filename));
     }
 
-    @Transactional
     public void logAction(String action, String filename) {
-        User user = authUtil.getLoggedInUser();
-        AuditLog log = new AuditLog(user.getUserId(), action, filename);
-        auditLogRepository.save(log);
+        auditLogWriter.write(new AuditLog(authUtil.getLoggedInUserId(), action, filename));
     }
 
     @Transactional(readOnly = true)
     public AuditLogsResponse getLogsForUser(Integer pageNumber, Integer pageSize, String sortBy, String sortOrder) {
-        User user = authUtil.getLoggedInUser();
+        Long userId = authUtil.getLoggedInUserId();
+        String username = authUtil.getLoggedInUsername();
         Pageable pageable = getPageable(pageNumber, pageSize, sortBy, sortOrder);
-        Page<AuditLog> logs = auditLogRepository.findByUserId(user.getUserId(), pageable);
+        Page<AuditLog> logs = auditLogRepository.findByUserId(userId, pageable);
 
         List<AuditLogResponse> auditLogResponses = logs.getContent().stream().map(log -> {
             AuditLogResponse response = new AuditLogResponse();
-            response.setUsername(user.getUsername());
+            response.setUsername(username);
             response.setAction(log.getAction());
             response.setFilename(log.getFilename());
             response.setTimestamp(log.getTimestamp());
@@ -72,7 +70,6 @@ public class AuditLogService {
 
     @Transactional
     public void deleteAllLogsForUser() {
-        User user = authUtil.getLoggedInUser();
-        auditLogRepository.deleteByUserId(user.getUserId());
+        auditLogRepository.deleteByUserId(authUtil.getLoggedInUserId());
     }
 }
\ No newline at end of file
@@ -0,0 +1,201 @@
+package org.example.secureshare.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.secureshare.model.AuditLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Takes audit events off the request path. Events go into a bounded lock-free queue; a single background thread
+// writes them with JDBC batch inserts once batchSize have queued up or the oldest has waited flushIntervalMs.
+// What happens when the queue is full is set by overflowPolicy. Events still queued at shutdown are written first.
+@Service
+public class AuditLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLogWriter.class);
+
+    private static final String INSERT_SQL = "INSERT INTO audit_log (user_id, action, filename, timestamp) VALUES (?, ?, ?, ?)";
+
+    // How long a blocked caller parks before it looks for space again
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public enum OverflowPolicy {
+        // The caller waits until the writer has made room
+        BLOCK,
+        // The event is lost and counted in secureshare.audit.dropped
+        DROP,
+        // The caller inserts the event itself
+        SYNC
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long drainTimeoutMs;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Queue<AuditLog> queue = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() walks the queue, so the bound is kept here
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Counter dropped;
+    private final Counter failed;
+    private final Counter written;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditLogWriter(JdbcTemplate jdbcTemplate,
+                          @Value("${spring.app.audit.queueCapacity}") int capacity,
+                          @Value("${spring.app.audit.batchSize}") int batchSize,
+                          @Value("${spring.app.audit.flushIntervalMs}") long flushIntervalMs,
+                          @Value("${spring.app.audit.drainTimeoutMs}") long drainTimeoutMs,
+                          @Value("${spring.app.audit.overflowPolicy}") OverflowPolicy overflowPolicy,
+                          MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.drainTimeoutMs = drainTimeoutMs;
+        this.overflowPolicy = overflowPolicy;
+
+        Gauge.builder("secureshare.audit.queued", queued, AtomicInteger::get).register(meterRegistry);
+        this.dropped = Counter.builder("secureshare.audit.dropped").register(meterRegistry);
+        this.failed = Counter.builder("secureshare.audit.failed").register(meterRegistry);
+        this.written = Counter.builder("secureshare.audit.written").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::run, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Runs before the DataSource closes, since this bean depends on it
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(drainTimeoutMs);
+        if (writer.isAlive()) {
+            logger.warn("Audit writer did not drain within {} ms; {} events were not written", drainTimeoutMs, queued.get());
+            return;
+        }
+        // Events queued by callers that saw the writer running just before it stopped
+        List<AuditLog> remaining = new ArrayList<>();
+        for (AuditLog event; (event = queue.poll()) != null; ) {
+            queued.decrementAndGet();
+            remaining.add(event);
+        }
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    public void write(AuditLog event) {
+        if (!running) {
+            // The writer has stopped draining, so nothing queued now would be written
+            insert(List.of(event));
+            return;
+        }
+        while (!tryEnqueue(event)) {
+            switch (overflowPolicy) {
+                case DROP -> {
+                    dropped.increment();
+                    return;
+                }
+                case SYNC -> {
+                    insert(List.of(event));
+                    return;
+                }
+                case BLOCK -> {
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                    if (!running) {
+                        insert(List.of(event));
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean tryEnqueue(AuditLog event) {
+        int size;
+        do {
+            size = queued.get();
+            if (size >= capacity) {
+                return false;
+            }
+        } while (!queued.compareAndSet(size, size + 1));
+        queue.offer(event);
+        // Wake the writer once per full batch rather than on every event
+        if ((size + 1) % batchSize == 0) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    private void run() {
+        List<AuditLog> batch = new ArrayList<>(batchSize);
+        long firstQueuedAt = 0;
+        while (running || queued.get() > 0) {
+            AuditLog event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                queued.decrementAndGet();
+                if (batch.isEmpty()) {
+                    firstQueuedAt = System.nanoTime();
+                }
+                batch.add(event);
+            }
+
+            long waited = System.nanoTime() - firstQueuedAt;
+            if (batch.size() >= batchSize || (!batch.isEmpty() && (waited >= flushIntervalNanos || !running))) {
+                flush(batch);
+                batch.clear();
+            } else {
+                // Until the batch fills up, a producer wakes us, or the oldest event is due
+                LockSupport.parkNanos(this, batch.isEmpty() ? flushIntervalNanos : flushIntervalNanos - waited);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<AuditLog> batch) {
+        try {
+            insert(batch);
+        } catch (RuntimeException e) {
+            failed.increment(batch.size());
+            logger.error("Failed to write {} audit events", batch.size(), e);
+        }
+    }
+
+    private void insert(List<AuditLog> events) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, events.size(), (statement, event) -> {
+            statement.setObject(1, event.getUserId());
+            statement.setString(2, event.getAction());
+            statement.setString(3, event.getFilename());
+            statement.setTimestamp(4, Timestamp.valueOf(event.getTimestamp()));
+        });
+        written.increment(events.size());
+    }
+}
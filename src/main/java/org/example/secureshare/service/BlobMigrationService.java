@@ -0,0 +1,76 @@
+package org.example.secureshare.service;
+
+import org.example.secureshare.repository.FileContentRepository;
+import org.example.secureshare.storage.BlobStore;
+import org.example.secureshare.storage.BlobWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Moves ciphertext that older versions stored in file_content.encrypted_data (BYTEA) into the BlobStore.
+// Drops the column once every row has been moved.
+@Service
+public class BlobMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlobMigrationService.class);
+
+    @Autowired
+    private FileContentRepository fileContentRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Value("${spring.app.blobStore.migrationBatchSize}")
+    private int batchSize;
+
+    private volatile boolean legacyColumnPresent = true;
+
+    @Scheduled(initialDelayString = "${spring.app.blobStore.migrationIntervalMs}", fixedDelayString = "${spring.app.blobStore.migrationIntervalMs}")
+    public void migrateLegacyContent() {
+        if (!legacyColumnPresent) {
+            return;
+        }
+        if (!fileContentRepository.hasLegacyEncryptedDataColumn()) {
+            legacyColumnPresent = false;
+            return;
+        }
+
+        List<Long> contentIds = fileContentRepository.findLegacyContentIds(batchSize);
+        if (contentIds.isEmpty()) {
+            fileContentRepository.dropLegacyEncryptedDataColumn();
+            legacyColumnPresent = false;
+            logger.info("All inline file content moved to the blob store; dropped file_content.encrypted_data");
+            return;
+        }
+
+        for (Long contentId : contentIds) {
+            try {
+                migrateContent(contentId);
+            } catch (RuntimeException e) {
+                logger.error("Failed to move content ID {} to the blob store", contentId, e);
+            }
+        }
+        logger.info("Moved {} file contents to the blob store", contentIds.size());
+    }
+
+    // Blob ids are content hashes, so a row migrated concurrently elsewhere ends up with the same reference
+    public String migrateContent(Long contentId) {
+        try (InputStream legacyData = fileContentRepository.openLegacyEncryptedData(contentId);
+             BlobWriter blobWriter = blobStore.openWriter()) {
+            legacyData.transferTo(blobWriter);
+            String blobRef = blobWriter.commit();
+            fileContentRepository.moveLegacyEncryptedDataToBlob(contentId, blobRef);
+            return blobRef;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to move content ID " + contentId + " to the blob store", e);
+        }
+    }
+}
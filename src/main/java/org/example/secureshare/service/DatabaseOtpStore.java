@@ -0,0 +1,52 @@
+package org.example.secureshare.service;
+
+import org.example.secureshare.model.Otp;
+import org.example.secureshare.repository.OtpRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+// OTPs in the otp table, shared by every node. Abandoned rows are removed by a periodic bulk delete.
+@Service
+@ConditionalOnProperty(name = "spring.app.otp.store", havingValue = "database", matchIfMissing = true)
+public class DatabaseOtpStore implements OtpStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseOtpStore.class);
+
+    @Autowired
+    private OtpRepository otpRepository;
+
+    @Override
+    public void save(String email, String otpCode, LocalDateTime expiresAt) {
+        otpRepository.save(new Otp(email, otpCode, expiresAt));
+    }
+
+    @Override
+    public Optional<Otp> find(String email) {
+        return otpRepository.findById(email);
+    }
+
+    @Override
+    public boolean consume(String email, String otpCode) {
+        return otpRepository.deleteIfValid(email, otpCode, LocalDateTime.now()) > 0;
+    }
+
+    @Override
+    public void remove(String email) {
+        otpRepository.deleteById(email);
+    }
+
+    @Scheduled(initialDelayString = "${spring.app.otp.purgeIntervalMs}", fixedDelayString = "${spring.app.otp.purgeIntervalMs}")
+    public void purgeExpired() {
+        int purged = otpRepository.deleteExpired(LocalDateTime.now());
+        if (purged > 0) {
+            logger.debug("Purged {} expired OTPs", purged);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.example.secureshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.secureshare.mail.EmailTransport;
+import org.example.secureshare.mail.OutgoingEmail;
+import org.example.secureshare.model.EmailOutbox;
+import org.example.secureshare.repository.EmailOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Transactional outbox for mail. Requests only insert a row, in their own transaction, so a slow mail provider can
+// no longer hold request threads or pooled connections. A background dispatcher claims due rows in batches, sends
+// them on its own bounded pool and retries failures with exponential backoff. Delivery is at least once.
+@Service
+public class EmailOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxService.class);
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private EmailTransport emailTransport;
+
+    @Autowired
+    private KeyService keyService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${spring.app.mail.outbox.batchSize}")
+    private int batchSize;
+
+    @Value("${spring.app.mail.outbox.concurrency}")
+    private int concurrency;
+
+    @Value("${spring.app.mail.outbox.leaseMs}")
+    private long leaseMs;
+
+    @Value("${spring.app.mail.outbox.maxAttempts}")
+    private int maxAttempts;
+
+    @Value("${spring.app.mail.outbox.initialBackoffMs}")
+    private long initialBackoffMs;
+
+    @Value("${spring.app.mail.outbox.maxBackoffMs}")
+    private long maxBackoffMs;
+
+    @Value("${spring.app.mail.outbox.failedRetentionMs}")
+    private long failedRetentionMs;
+
+    // Kept out of the context for the same reason as FileService's upload executor
+    private ExecutorService sendExecutor;
+
+    @PostConstruct
+    public void startSendExecutor() {
+        sendExecutor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("mail-"));
+    }
+
+    @PreDestroy
+    public void stopSendExecutor() {
+        sendExecutor.shutdown();
+    }
+
+    // Joins the caller's transaction, so the mail is only sent if the caller's changes commit
+    @Transactional
+    public void enqueue(OutgoingEmail email) {
+        EmailOutbox entry = new EmailOutbox();
+        entry.setTemplate(email.getTemplate());
+        try {
+            entry.setPayload(keyService.encryptWithMasterKey(objectMapper.writeValueAsBytes(email)));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to queue " + email.getTemplate() + " email.", e);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        entry.setAttempts(0);
+        entry.setNextAttemptAt(now);
+        entry.setCreatedAt(now);
+        emailOutboxRepository.save(entry);
+    }
+
+    @Scheduled(initialDelayString = "${spring.app.mail.outbox.pollMs}", fixedDelayString = "${spring.app.mail.outbox.pollMs}")
+    public void dispatchPending() {
+        List<EmailOutbox> batch;
+        do {
+            batch = claimBatch();
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Callable<Void>> sends = batch.stream()
+                    .map(entry -> (Callable<Void>) () -> {
+                        deliver(entry);
+                        return null;
+                    })
+                    .toList();
+            try {
+                sendExecutor.invokeAll(sends);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    // Claimed rows are pushed out by the lease, so other nodes leave them alone once the row locks are released
+    private List<EmailOutbox> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<Long> ids = emailOutboxRepository.lockDueIds(now, batchSize);
+            if (ids.isEmpty()) {
+                return List.<EmailOutbox>of();
+            }
+            emailOutboxRepository.lease(ids, now.plus(Duration.ofMillis(leaseMs)));
+            return emailOutboxRepository.findAllById(ids);
+        });
+    }
+
+    private void deliver(EmailOutbox entry) {
+        OutgoingEmail email;
+        try {
+            email = objectMapper.readValue(keyService.decryptWithMasterKey(entry.getPayload()), OutgoingEmail.class);
+        } catch (Exception e) {
+            recordFailure(entry, e);
+            return;
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            emailTransport.send(email);
+        } catch (Exception e) {
+            sample.stop(sendTimer(entry, "failure"));
+            recordFailure(entry, e);
+            return;
+        }
+        sample.stop(sendTimer(entry, "success"));
+        // Time from the request that queued the mail to its delivery, retries included
+        Timer.builder("secureshare.mail.delivery.delay")
+                .tag("template", String.valueOf(entry.getTemplate()))
+                .register(meterRegistry)
+                .record(Duration.between(entry.getCreatedAt(), LocalDateTime.now()));
+
+        try {
+            emailOutboxRepository.deleteSent(entry.getId());
+        } catch (RuntimeException e) {
+            // The lease runs out and the mail goes out once more
+            logger.error("Failed to remove sent email ID {} from the outbox", entry.getId(), e);
+        }
+    }
+
+    // Provider latency per template and outcome, whichever transport is configured
+    private Timer sendTimer(EmailOutbox entry, String outcome) {
+        return Timer.builder("secureshare.mail.send")
+                .tag("template", String.valueOf(entry.getTemplate()))
+                .tag("transport", emailTransport.getClass().getSimpleName())
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    // Delivered rows are deleted as they go out; given-up ones are kept a while so they can be looked into
+    @Scheduled(initialDelayString = "${spring.app.mail.outbox.purgeIntervalMs}", fixedDelayString = "${spring.app.mail.outbox.purgeIntervalMs}")
+    public void purgeFailed() {
+        int purged = emailOutboxRepository.deleteFailedBefore(LocalDateTime.now().minus(Duration.ofMillis(failedRetentionMs)));
+        if (purged > 0) {
+            logger.info("Purged {} failed emails from the outbox", purged);
+        }
+    }
+
+    private void recordFailure(EmailOutbox entry, Exception e) {
+        String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        if (error.length() > MAX_ERROR_LENGTH) {
+            error = error.substring(0, MAX_ERROR_LENGTH);
+        }
+        try {
+            if (entry.getAttempts() >= maxAttempts) {
+                emailOutboxRepository.markFailed(entry.getId(), LocalDateTime.now(), error);
+                logger.error("Gave up on {} email ID {} after {} attempts", entry.getTemplate(), entry.getId(), entry.getAttempts(), e);
+            } else {
+                emailOutboxRepository.scheduleRetry(entry.getId(), LocalDateTime.now().plus(Duration.ofMillis(backoffMs(entry.getAttempts()))), error);
+                logger.warn("Failed to send {} email ID {} (attempt {}): {}", entry.getTemplate(), entry.getId(), entry.getAttempts(), error);
+            }
+        } catch (RuntimeException updateFailure) {
+            // The lease runs out and the row is claimed again
+            logger.error("Failed to record the failed attempt for email ID {}", entry.getId(), updateFailure);
+        }
+    }
+
+    private long backoffMs(int attempts) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        return Math.min(initialBackoffMs << doublings, maxBackoffMs);
+    }
+}
@@ -1,32 +1,62 @@
 package org.example.secureshare.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.AllArgsConstructor;
 import lombok.Data;
+import org.example.secureshare.crypto.SegmentedAesGcm;
+import org.example.secureshare.crypto.SegmentedAesGcmDecryptor;
 import org.example.secureshare.model.File;
+import org.example.secureshare.model.FileContent;
+import org.example.secureshare.model.KeyScheme;
 import org.example.secureshare.model.SharedFile;
 import org.example.secureshare.model.User;
 import org.example.secureshare.payload.fiteDTO.FetchFileResponse;
+import org.example.secureshare.payload.fiteDTO.FileDownload;
 import org.example.secureshare.payload.fiteDTO.FetchFilesResponse;
+import org.example.secureshare.repository.FileContentEnvelopeView;
+import org.example.secureshare.repository.FileContentRepository;
+import org.example.secureshare.repository.FileDownloadView;
 import org.example.secureshare.repository.FileRepository;
 import org.example.secureshare.repository.SharedFileRepository;
 import org.example.secureshare.repository.UserRepository;
+import org.example.secureshare.storage.BlobStore;
+import org.example.secureshare.storage.BlobWriter;
 import org.example.secureshare.util.AuthUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.jpa.domain.Specification;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import javax.crypto.SecretKey;
 import java.io.IOException;
-import java.security.PrivateKey;
-import java.security.PublicKey;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 
 @Service
 public class FileService {
@@ -36,6 +66,12 @@ public class FileService {
     @Autowired
     private FileRepository fileRepository;
 
+    @Autowired
+    private FileContentRepository fileContentRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
     @Autowired
     private AuthUtil authUtil;
 
@@ -48,186 +84,253 @@ public class FileService {
     @Autowired
     private KeyService keyService;
 
+    @Autowired
+    private UserKeyService userKeyService;
+
     @Autowired
     private EmailService emailService;
 
     @Autowired
     private SharedFileService sharedFileService;
 
+    @Value("${spring.app.upload.concurrency}")
+    private int uploadConcurrency;
+
+    @Value("${spring.app.download.legacyVerifyDir}")
+    private Path legacyVerifyDir;
+
+    private ThreadPoolExecutor uploadExecutor;
+
+    // Kept out of the context on purpose: an Executor bean would replace Boot's applicationTaskExecutor,
+    // which runs the streamed downloads. When all workers are busy the request thread encrypts itself.
+    @PostConstruct
+    public void startUploadExecutor() {
+        uploadExecutor = new ThreadPoolExecutor(uploadConcurrency, uploadConcurrency, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(uploadConcurrency * 4), new CustomizableThreadFactory("upload-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void stopUploadExecutor() {
+        uploadExecutor.shutdown();
+    }
+
     @Data
     @AllArgsConstructor
-    private static class FileLobData {
-        byte[] encryptedData;
-        String encryptedAesKey;
-        String iv;
-        String authTag;
-        String signature;
+    private static class PreparedUpload {
         String filename;
         String description;
         String category;
         String contentType;
-        Long originalFileId;
-        Long ownerId;
-        String ownerPublicKey;
+        String blobRef;
+        String iv;
+        String signature;
+        String encryptedAesKey;
+        KeyScheme keyScheme;
     }
 
+    @Transactional
+    public List<Long> storeFiles(MultipartFile[] files, String description, String category) throws IOException {
+        if (files == null || files.length == 0) {
+            throw new IllegalArgumentException("No files selected for upload.");
+        }
+        for (MultipartFile file : files) {
+            if (file.isEmpty()) {
+                throw new IllegalArgumentException("File cannot be empty: " + file.getOriginalFilename());
+            }
+        }
 
-    @Transactional(readOnly = true)
-    public FileLobData getFileLobDataForSharing(Long fileId, Long ownerId) {
-        logger.debug("Reading LOB data for file ID: {}", fileId);
-        File originalFile = fileRepository.findById(fileId)
-                .orElseThrow(() -> new NoSuchElementException("File not found with ID: " + fileId));
+        User owner = authUtil.getLoggedInUser();
 
-        if (!originalFile.getOwnerId().equals(ownerId)) {
-            throw new SecurityException("User is not authorized to share this file.");
+        // Encryption and signing of independent files run in parallel; persistence stays on this thread.
+        // Tasks that have not started yet are skipped once one file fails.
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<Future<PreparedUpload>> futures = new ArrayList<>();
+        for (MultipartFile file : files) {
+            futures.add(uploadExecutor.submit(() -> aborted.get() ? null
+                    : encryptUpload(file, description, category, owner)));
         }
 
-        // Eagerly fetch owner's public key
-        User owner = userRepository.findById(ownerId)
-                .orElseThrow(() -> new NoSuchElementException("User not found with ID: " + ownerId));
-        String ownerPublicKey = owner.getPublicKey();
-
-        // --- Force eager loading of ALL LOBs ---
-        // This copies the LOB data out of the stream and into a simple byte array
-        byte[] encryptedData = Arrays.copyOf(originalFile.getEncryptedData(), originalFile.getEncryptedData().length);
-
-        // This forces the TEXT LOBs to be read into memory as new Strings
-        String encryptedAesKey = new String(originalFile.getEncryptedAesKey());
-        String iv = new String(originalFile.getIv());
-        String authTag = new String(originalFile.getAuthTag());
-        String signature = new String(originalFile.getSignature());
-
-        logger.debug("Successfully read all LOB data for file ID: {}", fileId);
-
-        // Return the DTO with all data safely in memory
-        return new FileLobData(
-                encryptedData,
-                encryptedAesKey,
-                iv,
-                authTag,
-                signature,
-                originalFile.getFilename(),
-                originalFile.getDescription(),
-                originalFile.getCategory(),
-                originalFile.getContentType(),
-                originalFile.getOriginalFileId(),
-                originalFile.getOwnerId(),
-                ownerPublicKey
-        );
-    }
-
+        List<PreparedUpload> prepared = new ArrayList<>();
+        List<String> writtenBlobs = new ArrayList<>();
+        Throwable failure = null;
+        for (Future<PreparedUpload> future : futures) {
+            try {
+                PreparedUpload upload = getUninterruptibly(future);
+                if (upload != null) {
+                    prepared.add(upload);
+                    writtenBlobs.add(upload.getBlobRef());
+                }
+            } catch (ExecutionException e) {
+                aborted.set(true);
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
 
-    @Transactional
-    public List<Long> storeFiles(MultipartFile[] files, String description, String category) throws IOException {
-        if (files == null || files.length == 0) {
-            throw new IllegalArgumentException("No files selected for upload.");
+        // One failed file fails the batch, so blobs already written for the others are removed again
+        if (failure != null) {
+            deleteUnreferencedBlobs(writtenBlobs);
+            if (failure instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (failure instanceof IllegalArgumentException illegalArgumentException) {
+                throw illegalArgumentException;
+            }
+            throw new RuntimeException("Failed to upload file due to a cryptographic error.", failure);
         }
 
         List<Long> uploadedFileIds = new ArrayList<>();
-        for (MultipartFile file : files) {
-            Long fileId = this.storeSingleFile(file, description, category);
-            uploadedFileIds.add(fileId);
+        for (PreparedUpload upload : prepared) {
+            uploadedFileIds.add(persistUpload(owner, upload));
         }
         return uploadedFileIds;
     }
 
-    @Transactional
-    public Long storeSingleFile(MultipartFile file, String description, String category) throws IOException {
+    // Every task is waited for, so no blob is written after the batch has been cleaned up
+    private PreparedUpload getUninterruptibly(Future<PreparedUpload> future) throws ExecutionException {
+        boolean interrupted = false;
         try {
-            User owner = authUtil.getLoggedInUser();
-            if (file.isEmpty()) {
-                throw new IllegalArgumentException("File cannot be empty.");
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
             }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-            String metadata = file.getOriginalFilename() + description + category;
-            PrivateKey ownerPrivateKey = keyService.decryptPrivateKey(owner.getPrivateKey());
-            byte[] signatureBytes = keyService.signData(metadata.getBytes(), ownerPrivateKey);
-            String signature = Base64.getEncoder().encodeToString(signatureBytes);
-
+    private PreparedUpload encryptUpload(MultipartFile file, String description, String category, User owner) throws Exception {
+        SecretKey aesKey = keyService.generateAesKey();
+        byte[] iv = keyService.generateIV();
 
-            SecretKey aesKey = keyService.generateAesKey();
-            byte[] iv = keyService.generateIV();
+        // Encrypt segment by segment straight into the blob store; every segment carries its own tag
+        String blobRef;
+        try (BlobWriter blobWriter = blobStore.openWriter();
+             InputStream encryptedStream = keyService.encryptingStream(file.getInputStream(), aesKey, iv)) {
+            encryptedStream.transferTo(blobWriter);
+            blobRef = blobWriter.commit();
+        }
 
-            // Encrypt the file and get the combined data (ciphertext + tag)
-            byte[] encryptedCombinedData = keyService.encryptWithAesGcm(file.getBytes(), aesKey, iv);
+        return sealUpload(file.getOriginalFilename(), description, category, file.getContentType(),
+                aesKey, iv, blobRef, owner);
+    }
 
-            // Separate the ciphertext and the authentication tag
-            int tagLength = 16;
-            byte[] encryptedData = Arrays.copyOfRange(encryptedCombinedData, 0, encryptedCombinedData.length - tagLength);
-            byte[] authTagBytes = Arrays.copyOfRange(encryptedCombinedData, encryptedCombinedData.length - tagLength, encryptedCombinedData.length);
+    // Signs the metadata and wraps the content key for the owner, both under the owner's current scheme
+    private PreparedUpload sealUpload(String filename, String description, String category, String contentType,
+                                      SecretKey aesKey, byte[] iv, String blobRef, User owner) throws Exception {
+        KeyScheme keyScheme = userKeyService.getKeyScheme(owner);
+        String metadata = filename + description + category;
+        String signature = userKeyService.sign(owner, metadata.getBytes());
+        String encryptedAesKeyBase64 = userKeyService.wrapKey(owner, keyService.getAesKeyBytes(aesKey));
 
-            String authTagBase64 = Base64.getEncoder().encodeToString(authTagBytes);
+        return new PreparedUpload(filename, description, category, contentType, blobRef,
+                Base64.getEncoder().encodeToString(iv), signature, encryptedAesKeyBase64, keyScheme);
+    }
 
-            byte[] encryptedAesKeyBytes = keyService.encryptWithRsa(
-                    keyService.getAesKeyBytes(aesKey),
-                    keyService.decodePublicKey(owner.getPublicKey())
-            );
-            String encryptedAesKeyBase64 = Base64.getEncoder().encodeToString(encryptedAesKeyBytes);
-
-            // Save the file with the separated ciphertext and tag
-            File newFile = new File(); // Use the default constructor
-            newFile.setEncryptedData(encryptedData);
-            newFile.setSignature(signature);
-            newFile.setEncryptedAesKey(encryptedAesKeyBase64);
-            newFile.setIv(Base64.getEncoder().encodeToString(iv));
-            newFile.setAuthTag(authTagBase64);
-            newFile.setFilename(file.getOriginalFilename());
-            newFile.setDescription(description);
-            newFile.setCategory(category);
-            newFile.setContentType(file.getContentType());
-            newFile.setOwnerId(owner.getUserId());
-            newFile.setOriginalFileId(null);
-            newFile.setTimestamp(java.time.LocalDateTime.now());
-
-            File savedFile = fileRepository.save(newFile);
-
-            savedFile.setOriginalFileId(savedFile.getId());
-            fileRepository.save(savedFile);
+    // Records an encrypted blob as a new file of the given owner; used by session uploads
+    @Transactional
+    public Long saveEncryptedUpload(User owner, String filename, String description, String category, String contentType,
+                                    SecretKey aesKey, byte[] iv, String blobRef) throws Exception {
+        PreparedUpload upload = sealUpload(filename, description, category, contentType, aesKey, iv, blobRef, owner);
+        return persistUpload(owner, upload);
+    }
 
-            return savedFile.getId();
-        } catch (IOException | NoSuchElementException | IllegalArgumentException e) {
-            throw e;
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to upload file due to a cryptographic error.", e);
-        }
+    private Long persistUpload(User owner, PreparedUpload upload) {
+        deleteBlobsOnRollback(List.of(upload.getBlobRef()));
+
+        FileContent content = new FileContent();
+        content.setBlobRef(upload.getBlobRef());
+        content.setSignature(upload.getSignature());
+        content.setSignatureScheme(upload.getKeyScheme());
+        content.setIv(upload.getIv());
+        content.setFormatVersion(SegmentedAesGcm.VERSION);
+        content.setSignerId(owner.getUserId());
+        content.setRefCount(1);
+        FileContent savedContent = fileContentRepository.save(content);
+
+        File newFile = new File(); // Use the default constructor
+        newFile.setContentId(savedContent.getId());
+        newFile.setEncryptedAesKey(upload.getEncryptedAesKey());
+        newFile.setKeyScheme(upload.getKeyScheme());
+        newFile.setFilename(upload.getFilename());
+        newFile.setDescription(upload.getDescription());
+        newFile.setCategory(upload.getCategory());
+        newFile.setContentType(upload.getContentType());
+        newFile.setOwnerId(owner.getUserId());
+        newFile.setOriginalFileId(null);
+        newFile.setTimestamp(java.time.LocalDateTime.now());
+
+        File savedFile = fileRepository.save(newFile);
+
+        savedFile.setOriginalFileId(savedFile.getId());
+        fileRepository.save(savedFile);
+
+        return savedFile.getId();
     }
 
     @Transactional(readOnly = true)
-    public Map<String, Object> downloadFileAndGetMetadata(Long fileId) {
+    public FileDownload downloadFileAndGetMetadata(Long fileId) {
         try {
-            User owner = authUtil.getLoggedInUser();
-            File file = fileRepository.findById(fileId)
-                    .orElseThrow(() -> new NoSuchElementException("File not found with ID: " + fileId));
-
-            if (!file.getOwnerId().equals(owner.getUserId())) {
-                throw new SecurityException("User is not authorized to access this file.");
-            }
+            FileDownloadView envelope = findDownload(fileId);
 
             // Verify the file signature to ensure integrity
-            Long originalOwnerId = fileRepository.findByIdAndOriginalFileId(file.getOriginalFileId());
-            User originalOwner = userRepository.findById(originalOwnerId)
-                    .orElseThrow(() -> new NoSuchElementException("Original file owner not found with ID: " + originalOwnerId));
-
-            String metadata = file.getFilename() + file.getDescription() + file.getCategory();
-            boolean isSignatureValid = keyService.verifySignature(metadata.getBytes(), Base64.getDecoder().decode(file.getSignature()), keyService.decodePublicKey(originalOwner.getPublicKey()));
-            if (!isSignatureValid) {
-                throw new SecurityException("File integrity check failed: Invalid signature.");
+            if (envelope.getSignerUserId() == null) {
+                throw new NoSuchElementException("Original file owner not found for file ID: " + fileId);
             }
+            verifySignature(envelope.getFilename() + envelope.getDescription() + envelope.getCategory(), envelope.signer(), envelope);
 
-            PrivateKey ownerPrivateKey = keyService.decryptPrivateKey(owner.getPrivateKey());
-            byte[] encryptedAesKeyBytes = Base64.getDecoder().decode(file.getEncryptedAesKey());
-            byte[] decryptedAesKeyBytes = keyService.decryptWithRsa(encryptedAesKeyBytes, ownerPrivateKey);
+            byte[] decryptedAesKeyBytes = userKeyService.unwrapKey(envelope.requester(), envelope.getKeyScheme(), envelope.getEncryptedAesKey());
             SecretKey decryptedAesKey = keyService.getAesKeyFromBytes(decryptedAesKeyBytes);
-            byte[] iv = Base64.getDecoder().decode(file.getIv());
+            byte[] iv = Base64.getDecoder().decode(envelope.getIv());
+
+            if (isSegmented(envelope)) {
+                // Only the segments a range touches are read and decrypted
+                String blobRef = envelope.getBlobRef();
+                long contentLength = getSegmentedPlaintextLength(blobRef);
+                BiFunction<Long, Long, StreamingResponseBody> rangeBody = (start, end) -> outputStream -> {
+                    try (SeekableByteChannel ciphertext = blobStore.openReader(blobRef)) {
+                        keyService.segmentDecryptor(decryptedAesKey, iv).decrypt(ciphertext, start, end, outputStream);
+                    } catch (GeneralSecurityException e) {
+                        throw new IOException("Failed to initialise decryption for file ID: " + fileId, e);
+                    }
+                };
+                StreamingResponseBody body = contentLength == 0 ? outputStream -> { } : rangeBody.apply(0L, contentLength - 1);
+                return new FileDownload(envelope.getFilename(), envelope.getContentType(), contentLength, body, rangeBody, etag(blobRef, ""), null);
+            }
 
-            // Re-combine the encrypted data and the GCM tag for decryption
-            byte[] decryptedFileData = keyService.decryptWithAesGcm(combineCiphertextAndTag(file.getEncryptedData(), file.getAuthTag()), decryptedAesKey, iv);
+            byte[] authTag = Base64.getDecoder().decode(envelope.getAuthTag());
+            long contentLength = getCiphertextLength(envelope);
+
+            // Legacy files carry a single tag, so no plaintext may be sent before the whole file is verified.
+            // The ciphertext is copied aside and verified, and the response is decrypted from that same copy.
+            StreamingResponseBody body = outputStream -> {
+                Files.createDirectories(legacyVerifyDir);
+                Path copy = Files.createTempFile(legacyVerifyDir, "download-", ".enc");
+                try {
+                    try (InputStream ciphertext = openCiphertext(envelope)) {
+                        Files.copy(ciphertext, copy, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    try (InputStream ciphertext = Files.newInputStream(copy)) {
+                        keyService.decryptingStream(decryptedAesKey, iv, authTag).decrypt(ciphertext, OutputStream.nullOutputStream());
+                    }
+                    try (InputStream ciphertext = Files.newInputStream(copy)) {
+                        keyService.decryptingStream(decryptedAesKey, iv, authTag).decrypt(ciphertext, outputStream);
+                    }
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Failed to initialise decryption for file ID: " + fileId, e);
+                } finally {
+                    Files.deleteIfExists(copy);
+                }
+            };
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("fileData", decryptedFileData);
-            result.put("originalFilename", file.getFilename());
-            result.put("contentType", file.getContentType());
-            return result;
+            return new FileDownload(envelope.getFilename(), envelope.getContentType(), contentLength, body, null, null, null);
 
         } catch (NoSuchElementException | SecurityException | IllegalArgumentException e) {
             throw e;
@@ -236,43 +339,20 @@ public class FileService {
         }
     }
 
-    // Utility method to combine ciphertext and tag for decryption
-    private byte[] combineCiphertextAndTag(byte[] encryptedData, String authTagBase64) {
-        byte[] authTagBytes = Base64.getDecoder().decode(authTagBase64);
-        byte[] combined = new byte[encryptedData.length + authTagBytes.length];
-        System.arraycopy(encryptedData, 0, combined, 0, encryptedData.length);
-        System.arraycopy(authTagBytes, 0, combined, encryptedData.length, authTagBytes.length);
-        return combined;
-    }
-
     @Transactional(readOnly = true)
     public FetchFilesResponse getAllFilesForUser(String keyword, Integer pageNumber, Integer pageSize, String sortBy, String sortOrder) {
-        User owner = authUtil.getLoggedInUser();
+        Long ownerId = authUtil.getLoggedInUserId();
         Pageable pageable = getPageable(pageNumber, pageSize, sortBy, sortOrder);
 
-        Specification<File> spec = (root, query, cb) -> cb.equal(root.get("ownerId"), owner.getUserId());
-
+        String likeKeyword = null;
         if (keyword != null && !keyword.isEmpty()) {
-            String likeKeyword = "%" + keyword.toLowerCase() + "%";
-
-            Specification<File> keywordSpec = (root, query, cb) -> cb.like(cb.lower(root.get("category")), likeKeyword);
-            keywordSpec = keywordSpec.or((root, query, cb) -> cb.like(cb.lower(root.get("description")), likeKeyword));
-            keywordSpec = keywordSpec.or((root, query, cb) -> cb.like(cb.lower(root.get("filename")), likeKeyword));
-
-            spec = spec.and(keywordSpec);
+            likeKeyword = "%" + keyword.toLowerCase() + "%";
         }
 
-        Page<File> files = fileRepository.findAll(spec, pageable);
+        // Projects straight into the DTO so listings never touch the content table
+        Page<FetchFileResponse> files = fileRepository.findFileSummaries(ownerId, likeKeyword, pageable);
         FetchFilesResponse response = new FetchFilesResponse();
-        List<FetchFileResponse> fetchFileResponses = files.stream()
-                .map(file -> new FetchFileResponse(
-                        file.getId(),
-                        file.getFilename(),
-                        file.getDescription(),
-                        file.getCategory(),
-                        file.getTimestamp()
-                ))
-                .toList();
+        List<FetchFileResponse> fetchFileResponses = files.getContent();
         response.setFetchFiles(fetchFileResponses);
         response.setPageNumber(files.getNumber() + 1);
         response.setPageSize(files.getSize());
@@ -288,56 +368,49 @@ public class FileService {
             User owner = authUtil.getLoggedInUser();
             logger.debug("Initiating share for file ID: {} from user: {} to user: {}", fileId, owner.getUsername(), recipientUsername);
 
-            // --- STEP 1: READ (in a separate, read-only transaction) ---
-            FileLobData originalFileData = this.getFileLobDataForSharing(fileId, owner.getUserId());
+            File originalFile = fileRepository.findById(fileId)
+                    .orElseThrow(() -> new NoSuchElementException("File not found with ID: " + fileId));
+
+            if (!originalFile.getOwnerId().equals(owner.getUserId())) {
+                throw new SecurityException("User is not authorized to share this file.");
+            }
 
-            // --- STEP 2: PROCESS (in memory) ---
             User recipient = userRepository.findByUsername(recipientUsername)
                     .orElseThrow(() -> new NoSuchElementException("Recipient not found with username: " + recipientUsername));
 
-            // This check now works reliably
-            if (fileRepository.existbyOriginalFileIdAndOwnerId(fileId, recipient.getUserId())) {
+            if (fileRepository.existbyOriginalFileIdAndOwnerId(originalFile.getOriginalFileId(), recipient.getUserId())) {
                 logger.warn("Share failed: Recipient {} already has access to file ID: {}", recipientUsername, fileId);
                 throw new IllegalArgumentException("Recipient already has access to this file.");
             }
 
-            String metadata = originalFileData.getFilename() + originalFileData.getDescription() + originalFileData.getCategory();
-            boolean isSignatureValid = keyService.verifySignature(
-                    metadata.getBytes(),
-                    Base64.getDecoder().decode(originalFileData.getSignature()),
-                    keyService.decodePublicKey(originalFileData.getOwnerPublicKey())
-            );
-            if (!isSignatureValid) {
-                throw new SecurityException("File integrity check failed: Invalid signature.");
-            }
+            // Only the small envelope is read; the ciphertext is never touched, whatever the file size
+            FileContentEnvelopeView envelope = fileContentRepository.findEnvelopeById(originalFile.getContentId())
+                    .orElseThrow(() -> new NoSuchElementException("File content not found for file ID: " + fileId));
+            verifySignature(originalFile, envelope);
 
-            PrivateKey senderPrivateKey = keyService.decryptPrivateKey(owner.getPrivateKey());
-            byte[] encryptedAesKeyBytes = Base64.getDecoder().decode(originalFileData.getEncryptedAesKey());
-            byte[] decryptedAesKeyBytes = keyService.decryptWithRsa(encryptedAesKeyBytes, senderPrivateKey);
-            SecretKey decryptedAesKey = keyService.getAesKeyFromBytes(decryptedAesKeyBytes);
+            byte[] decryptedAesKeyBytes = userKeyService.unwrapKey(owner, originalFile.getKeyScheme(), originalFile.getEncryptedAesKey());
+            KeyScheme recipientKeyScheme = userKeyService.getKeyScheme(recipient);
+            String encryptedAesKeyForRecipientBase64 = userKeyService.wrapKey(recipient, decryptedAesKeyBytes);
 
-            PublicKey recipientPublicKey = keyService.decodePublicKey(recipient.getPublicKey());
-            byte[] encryptedAesKeyForRecipientBytes = keyService.encryptWithRsa(keyService.getAesKeyBytes(decryptedAesKey), recipientPublicKey);
-            String encryptedAesKeyForRecipientBase64 = Base64.getEncoder().encodeToString(encryptedAesKeyForRecipientBytes);
+            // The recipient gets a metadata row with their own wrapped key pointing at the same content
+            if (fileContentRepository.incrementRefCount(originalFile.getContentId()) == 0) {
+                throw new NoSuchElementException("File content is no longer available for file ID: " + fileId);
+            }
 
-            // --- STEP 3: WRITE (in a new transaction) ---
-            logger.debug("All checks passed. Saving new file copy for user: {}", recipientUsername);
             File sharedFile = new File();
-            sharedFile.setEncryptedData(originalFileData.getEncryptedData()); // Use the eagerly loaded byte array
-            sharedFile.setSignature(originalFileData.getSignature());
+            sharedFile.setContentId(originalFile.getContentId());
             sharedFile.setEncryptedAesKey(encryptedAesKeyForRecipientBase64);
-            sharedFile.setIv(originalFileData.getIv());
-            sharedFile.setAuthTag(originalFileData.getAuthTag());
-            sharedFile.setFilename(originalFileData.getFilename());
-            sharedFile.setDescription(originalFileData.getDescription());
-            sharedFile.setCategory(originalFileData.getCategory());
-            sharedFile.setContentType(originalFileData.getContentType());
+            sharedFile.setKeyScheme(recipientKeyScheme);
+            sharedFile.setFilename(originalFile.getFilename());
+            sharedFile.setDescription(originalFile.getDescription());
+            sharedFile.setCategory(originalFile.getCategory());
+            sharedFile.setContentType(originalFile.getContentType());
             sharedFile.setOwnerId(recipient.getUserId());
-            sharedFile.setOriginalFileId(originalFileData.getOriginalFileId());
+            sharedFile.setOriginalFileId(originalFile.getOriginalFileId());
             sharedFile.setTimestamp(java.time.LocalDateTime.now());
 
             File savedFile = fileRepository.save(sharedFile);
-            logger.debug("New file copy saved with ID: {}", savedFile.getId());
+            logger.debug("New file envelope saved with ID: {}", savedFile.getId());
 
             // --- STEP 4: LOG (in the *same* transaction) ---
             // This is the fix for the "Received Files" page.
@@ -372,18 +445,18 @@ public class FileService {
 
     @Transactional
     public void deleteFile(Long fileId, String deletionType, List<String> recipientUsernames) {
-        User owner = authUtil.getLoggedInUser();
+        Long ownerId = authUtil.getLoggedInUserId();
         File originalFile = fileRepository.findById(fileId)
                 .orElseThrow(() -> new NoSuchElementException("File not found with ID: " + fileId));
 
-        if (!originalFile.getOwnerId().equals(owner.getUserId())) {
+        if (!originalFile.getOwnerId().equals(ownerId)) {
             throw new SecurityException("User is not authorized to delete this file.");
         }
 
         if(fileRepository.existbyOriginalFileIdAndFileId(fileId)) {
             switch (deletionType) {
                 case "me":
-                    fileRepository.delete(originalFile);
+                    deleteFilesWithContent(List.of(originalFile));
                     break;
                 case "everyone":
                     List<SharedFile> allSharedFileLogs = sharedFileRepository.findSharedFilesByFileId(fileId);
@@ -391,8 +464,8 @@ public class FileService {
                             .map(SharedFile::getNewFileId)
                             .toList();
                     sharedFileRepository.deleteAll(allSharedFileLogs);
-                    fileRepository.deleteAllById(recipientFileIds);
-                    fileRepository.delete(originalFile);
+                    deleteFilesWithContent(fileRepository.findAllById(recipientFileIds));
+                    deleteFilesWithContent(List.of(originalFile));
                     break;
                 case "list":
                     if (recipientUsernames == null || recipientUsernames.isEmpty()) {
@@ -416,7 +489,7 @@ public class FileService {
                             .toList();
 
                     sharedFileRepository.deleteAll(sharedFileLogsForRecipients);
-                    fileRepository.deleteAllById(recipientFilesToDeleteIds);
+                    deleteFilesWithContent(fileRepository.findAllById(recipientFilesToDeleteIds));
                     break;
                 default:
                     throw new IllegalArgumentException("Invalid deletion type: " + deletionType);
@@ -425,37 +498,148 @@ public class FileService {
             if (!"me".equals(deletionType)) {
                 throw new IllegalArgumentException("Deletion type must be 'me' for a shared file copy.");
             }
-            fileRepository.delete(originalFile);
+            deleteFilesWithContent(List.of(originalFile));
             sharedFileRepository.deleteByNewFileId(fileId);
         }
     }
 
-    @Transactional(readOnly = true)
-    public Map<String, Object> downloadEncryptedFileAndSendKeys(Long fileId) {
-        try {
-            User owner = authUtil.getLoggedInUser();
-            File file = fileRepository.findById(fileId)
-                    .orElseThrow(() -> new NoSuchElementException("File not found with ID: " + fileId));
+    // Removes the metadata rows and drops their references; content is only freed once nobody points at it
+    private void deleteFilesWithContent(List<File> files) {
+        Map<Long, Integer> releasedReferences = new HashMap<>();
+        for (File file : files) {
+            if (file.getContentId() != null) {
+                releasedReferences.merge(file.getContentId(), 1, Integer::sum);
+            }
+        }
+        fileRepository.deleteAll(files);
+        if (releasedReferences.isEmpty()) {
+            return;
+        }
+
+        releasedReferences.forEach(fileContentRepository::decrementRefCount);
+        List<Long> unreferencedIds = fileContentRepository.findUnreferencedIdsByIdIn(new ArrayList<>(releasedReferences.keySet()));
+        if (!unreferencedIds.isEmpty()) {
+            List<String> blobRefs = fileContentRepository.findBlobRefsByIdIn(unreferencedIds);
+            fileContentRepository.deleteAllByIdIn(unreferencedIds);
+            deleteUnreferencedBlobsAfterCommit(blobRefs);
+        }
+    }
+
+    // Resolves the file, its envelope and the keys of the requester and signer in a single statement
+    private FileDownloadView findDownload(Long fileId) {
+        FileDownloadView download = fileRepository.findDownloadById(fileId, authUtil.getLoggedInUsername())
+                .orElseThrow(() -> new NoSuchElementException("File not found with ID: " + fileId));
+
+        if (!download.getOwnerId().equals(download.getRequesterId())) {
+            throw new SecurityException("User is not authorized to access this file.");
+        }
+        if (download.getId() == null) {
+            throw new NoSuchElementException("File content not found for file ID: " + fileId);
+        }
+        return download;
+    }
 
-            if (!file.getOwnerId().equals(owner.getUserId())) {
-                throw new SecurityException("User is not authorized to access this file.");
+    private void verifySignature(File file, FileContentEnvelopeView envelope) throws Exception {
+        if (envelope.getSignerId() == null) {
+            throw new NoSuchElementException("Original file owner not found for file ID: " + file.getId());
+        }
+        User signer = userRepository.findById(envelope.getSignerId())
+                .orElseThrow(() -> new NoSuchElementException("Original file owner not found with ID: " + envelope.getSignerId()));
+
+        verifySignature(file.getFilename() + file.getDescription() + file.getCategory(), signer, envelope);
+    }
+
+    private void verifySignature(String metadata, User signer, FileContentEnvelopeView envelope) throws Exception {
+        boolean isSignatureValid = userKeyService.verify(signer, envelope.getSignatureScheme(), metadata.getBytes(), envelope.getSignature());
+        if (!isSignatureValid) {
+            throw new SecurityException("File integrity check failed: Invalid signature.");
+        }
+    }
+
+    private long getCiphertextLength(FileContentEnvelopeView envelope) throws IOException {
+        if (envelope.getBlobRef() != null) {
+            return blobStore.size(envelope.getBlobRef());
+        }
+        return fileContentRepository.getLegacyEncryptedDataLength(envelope.getId());
+    }
+
+    private InputStream openCiphertext(FileContentEnvelopeView envelope) throws IOException {
+        if (envelope.getBlobRef() != null) {
+            return Channels.newInputStream(blobStore.openReader(envelope.getBlobRef()));
+        }
+        return fileContentRepository.openLegacyEncryptedData(envelope.getId());
+    }
+
+    // Blob writes are not transactional, so a freshly written blob is removed again if the upload rolls back
+    private void deleteBlobsOnRollback(List<String> blobRefs) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    deleteUnreferencedBlobs(blobRefs);
+                }
             }
+        });
+    }
 
-            PrivateKey ownerPrivateKey = keyService.decryptPrivateKey(owner.getPrivateKey());
-            byte[] encryptedAesKeyBytes = Base64.getDecoder().decode(file.getEncryptedAesKey());
-            byte[] decryptedAesKeyBytes = keyService.decryptWithRsa(encryptedAesKeyBytes, ownerPrivateKey);
+    // Several content rows may point at one blob, so it is only removed once the last row is gone
+    private void deleteUnreferencedBlobsAfterCommit(List<String> blobRefs) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deleteUnreferencedBlobs(blobRefs);
+            }
+        });
+    }
 
-            String aesKeyBase64 = Base64.getEncoder().encodeToString(decryptedAesKeyBytes);
-            String ivBase64 = file.getIv();
-            String authTagBase64 = file.getAuthTag();
+    private void deleteUnreferencedBlobs(List<String> blobRefs) {
+        for (String blobRef : new HashSet<>(blobRefs)) {
+            try {
+                if (!fileContentRepository.existsByBlobRef(blobRef)) {
+                    blobStore.delete(blobRef);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to delete blob {}", blobRef, e);
+            }
+        }
+    }
 
-            emailService.sendKeyIvAndTagJson(owner.getEmail(), aesKeyBase64, ivBase64, authTagBase64);
+    // The keys are not sent here: only the caller knows, once it has resolved the Range header, whether this
+    // response starts the download or resumes one that already delivered them
+    @Transactional(readOnly = true)
+    public FileDownload downloadEncryptedFile(Long fileId) {
+        try {
+            FileDownloadView envelope = findDownload(fileId);
+            User owner = envelope.requester();
+
+            Runnable sendKeys = () -> {
+                try {
+                    byte[] decryptedAesKeyBytes = userKeyService.unwrapKey(owner, envelope.getKeyScheme(), envelope.getEncryptedAesKey());
+
+                    String aesKeyBase64 = Base64.getEncoder().encodeToString(decryptedAesKeyBytes);
+                    String format = isSegmented(envelope) ? SegmentedAesGcm.FORMAT_NAME : "aes-256-gcm";
+                    emailService.sendKeyIvAndTagJson(owner.getEmail(), aesKeyBase64, envelope.getIv(), envelope.getAuthTag(), format);
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to send the decryption keys.", e);
+                }
+            };
+
+            long contentLength = getCiphertextLength(envelope);
+            StreamingResponseBody body = outputStream -> {
+                try (InputStream ciphertext = openCiphertext(envelope)) {
+                    ciphertext.transferTo(outputStream);
+                }
+            };
+
+            BiFunction<Long, Long, StreamingResponseBody> rangeBody = null;
+            String etag = null;
+            if (envelope.getBlobRef() != null) {
+                String blobRef = envelope.getBlobRef();
+                rangeBody = (start, end) -> outputStream -> copyBlobRange(blobRef, start, end, outputStream);
+                etag = etag(blobRef, "-enc");
+            }
 
-            Map<String, Object> result = new HashMap<>();
-            result.put("encryptedFileData", file.getEncryptedData());
-            result.put("originalFilename", file.getFilename() + ".enc");
-            result.put("contentType", file.getContentType());
-            return result;
+            return new FileDownload(envelope.getFilename() + ".enc", envelope.getContentType(), contentLength, body, rangeBody, etag, sendKeys);
 
         } catch (NoSuchElementException | SecurityException | IllegalArgumentException e) {
             throw e;
@@ -463,4 +647,37 @@ public class FileService {
             throw new RuntimeException("Failed to prepare encrypted download.", e);
         }
     }
-}
\ No newline at end of file
+
+    private boolean isSegmented(FileContentEnvelopeView envelope) {
+        return envelope.getFormatVersion() != null && envelope.getFormatVersion() == SegmentedAesGcm.VERSION;
+    }
+
+    private long getSegmentedPlaintextLength(String blobRef) throws IOException {
+        try (SeekableByteChannel ciphertext = blobStore.openReader(blobRef)) {
+            byte[] header = SegmentedAesGcmDecryptor.readHeader(ciphertext);
+            return SegmentedAesGcm.plaintextLength(ciphertext.size(), SegmentedAesGcm.segmentSize(header));
+        }
+    }
+
+    private void copyBlobRange(String blobRef, long start, long end, OutputStream outputStream) throws IOException {
+        try (SeekableByteChannel channel = blobStore.openReader(blobRef)) {
+            channel.position(start);
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer);
+                if (read < 0) {
+                    throw new IOException("Blob " + blobRef + " ended before the requested range.");
+                }
+                outputStream.write(buffer.array(), 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    // Blob ids are content hashes of the immutable ciphertext, so they make strong validators for If-Range
+    private String etag(String blobRef, String suffix) {
+        return "\"" + blobRef + suffix + "\"";
+    }
+}
@@ -0,0 +1,96 @@
+package org.example.secureshare.service;
+
+import org.example.secureshare.model.Otp;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// OTPs in memory, for single-node deployments. Expiry runs on a hashed timer wheel: every OTP is filed under the
+// tick it expires at, and each tick only visits its own bucket, so nothing ever scans the whole store. The wheel
+// only reclaims memory; reads compare the expiry themselves, so an OTP is never accepted late.
+@Service
+@ConditionalOnProperty(name = "spring.app.otp.store", havingValue = "memory")
+public class InMemoryOtpStore implements OtpStore {
+
+    private record Expiry(String email, Otp otp, long deadlineTick) {
+    }
+
+    private final Map<String, Otp> otps = new ConcurrentHashMap<>();
+    private final List<Queue<Expiry>> wheel;
+    private final long tickMs;
+    private final long startMillis = System.currentTimeMillis();
+
+    // Next tick to process; only advance() touches it
+    private long currentTick;
+
+    public InMemoryOtpStore(@Value("${spring.app.otp.wheel.tickMs}") long tickMs,
+                            @Value("${spring.app.otp.wheel.size}") int wheelSize) {
+        this.tickMs = tickMs;
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    @Override
+    public void save(String email, String otpCode, LocalDateTime expiresAt) {
+        Otp otp = new Otp(email, otpCode, expiresAt);
+        otps.put(email, otp);
+
+        // Rounded up, so the entry is never reclaimed before it has expired. One whose tick has already gone by
+        // waits for the wheel to come round again.
+        long deadlineMillis = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long deadlineTick = Math.max(-Math.floorDiv(startMillis - deadlineMillis, tickMs), 0);
+        wheel.get((int) (deadlineTick % wheel.size())).add(new Expiry(email, otp, deadlineTick));
+    }
+
+    @Override
+    public Optional<Otp> find(String email) {
+        return Optional.ofNullable(otps.get(email));
+    }
+
+    @Override
+    public boolean consume(String email, String otpCode) {
+        Otp otp = otps.get(email);
+        if (otp == null || !otp.getOtpCode().equals(otpCode) || otp.getExpirationTime().isBefore(LocalDateTime.now())) {
+            return false;
+        }
+        return otps.remove(email, otp);
+    }
+
+    @Override
+    public void remove(String email) {
+        otps.remove(email);
+    }
+
+    @Scheduled(fixedRateString = "${spring.app.otp.wheel.tickMs}")
+    public synchronized void advance() {
+        long nowTick = (System.currentTimeMillis() - startMillis) / tickMs;
+        // After a stall, one full turn visits every bucket; there is nothing more to catch up on
+        long firstTick = Math.max(currentTick, nowTick - wheel.size() + 1);
+        for (long tick = firstTick; tick <= nowTick; tick++) {
+            Iterator<Expiry> bucket = wheel.get((int) (tick % wheel.size())).iterator();
+            while (bucket.hasNext()) {
+                Expiry expiry = bucket.next();
+                if (expiry.deadlineTick() <= nowTick) {
+                    // Only if it was not replaced by a newer OTP for the same email in the meantime
+                    otps.remove(expiry.email(), expiry.otp());
+                    bucket.remove();
+                }
+            }
+        }
+        currentTick = nowTick + 1;
+    }
+}
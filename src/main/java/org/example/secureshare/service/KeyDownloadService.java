@@ -1,5 +1,6 @@
 package org.example.secureshare.service;
 
+import org.example.secureshare.model.KeyScheme;
 import org.example.secureshare.model.User;
 import org.example.secureshare.repository.UserRepository;
 import org.example.secureshare.util.AuthUtil;
@@ -22,14 +23,19 @@ public class KeyDownloadService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserKeyService userKeyService;
+
     public Resource downloadPublicKey() {
         User user = authUtil.getLoggedInUser();
 
-        if (user.getPublicKey() == null) {
+        // Under the EC scheme the key-wrapping key is the X25519 one
+        boolean ec = userKeyService.getKeyScheme(user) == KeyScheme.EC;
+        String encodedKey = ec ? user.getExchangePublicKey() : user.getPublicKey();
+        if (encodedKey == null) {
             throw new IllegalStateException("No public key available for user.");
         }
 
-        String encodedKey = user.getPublicKey();
         String pemFormatted =
                 "-----BEGIN PUBLIC KEY-----\n" +
                         chunkString(encodedKey) +
@@ -44,11 +50,13 @@ public class KeyDownloadService {
     public Resource downloadPrivateKey() throws Exception {
         User user = authUtil.getLoggedInUser();
 
-        if (user.getPrivateKey() == null) {
+        boolean ec = userKeyService.getKeyScheme(user) == KeyScheme.EC;
+        String encryptedKey = ec ? user.getExchangePrivateKey() : user.getPrivateKey();
+        if (encryptedKey == null) {
             throw new IllegalStateException("No private key available for user.");
         }
 
-        PrivateKey privateKey = keyService.decryptPrivateKey(user.getPrivateKey());
+        PrivateKey privateKey = keyService.decryptPrivateKey(encryptedKey, ec ? KeyService.X25519 : KeyService.RSA);
         String encodedKey = keyService.encodePrivateKey(privateKey);
         String pemFormatted =
                 "-----BEGIN PUBLIC KEY-----\n" +
@@ -0,0 +1,99 @@
+package org.example.secureshare.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.example.secureshare.model.KeyScheme;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Keeps a bounded supply of fresh RSA key pairs so signup does not pay for key generation on the request thread.
+// A single background thread refills the pool; when it runs dry, callers generate inline as before.
+// Pairs are handed out once and never reused. Only runs while signups default to RSA.
+@Service
+public class KeyPairPoolService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyPairPoolService.class);
+
+    private static final long RETRY_DELAY_MS = 1000;
+
+    @Autowired
+    private KeyService keyService;
+
+    private final int poolSize;
+    private final BlockingQueue<KeyPair> pool;
+    private final Counter generatedInBackground;
+    private final Counter generatedInline;
+
+    private Thread refiller;
+
+    public KeyPairPoolService(@Value("${spring.app.keyPool.size}") int poolSize,
+                              @Value("${spring.app.keyScheme.signupDefault}") KeyScheme signupKeyScheme,
+                              MeterRegistry meterRegistry) {
+        this.poolSize = signupKeyScheme == KeyScheme.RSA ? poolSize : 0;
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, this.poolSize));
+
+        Gauge.builder("secureshare.keypool.available", pool, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("secureshare.keypool.capacity", () -> this.poolSize).register(meterRegistry);
+        this.generatedInBackground = Counter.builder("secureshare.keypool.generated").tag("source", "background").register(meterRegistry);
+        this.generatedInline = Counter.builder("secureshare.keypool.generated").tag("source", "inline").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (poolSize <= 0) {
+            return;
+        }
+        refiller = new Thread(this::refill, "rsa-keypool");
+        refiller.setDaemon(true);
+        refiller.setPriority(Thread.MIN_PRIORITY);
+        refiller.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refiller != null) {
+            refiller.interrupt();
+        }
+    }
+
+    public KeyPair takeRsaKeyPair() throws NoSuchAlgorithmException {
+        KeyPair keyPair = pool.poll();
+        if (keyPair != null) {
+            return keyPair;
+        }
+        generatedInline.increment();
+        return keyService.generateRsaKeyPair();
+    }
+
+    private void refill() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                KeyPair keyPair = keyService.generateRsaKeyPair();
+                generatedInBackground.increment();
+                // Blocks while the pool is full, so the thread only burns CPU when pairs are being consumed
+                pool.put(keyPair);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Background RSA key generation failed", e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
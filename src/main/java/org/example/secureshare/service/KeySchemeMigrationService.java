@@ -0,0 +1,145 @@
+package org.example.secureshare.service;
+
+import org.example.secureshare.model.File;
+import org.example.secureshare.model.KeyScheme;
+import org.example.secureshare.model.User;
+import org.example.secureshare.repository.FileRepository;
+import org.example.secureshare.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Moves active users to the signup key scheme in the background. Users are queued when they sign in; a run gives
+// them keys of the new scheme, then re-wraps in batches every content key still wrapped under their old scheme.
+// Old keys are kept, so a row wrapped under the old scheme while a user moves stays readable until it is re-wrapped.
+@Service
+public class KeySchemeMigrationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeySchemeMigrationService.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private UserKeyService userKeyService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${spring.app.keyScheme.signupDefault}")
+    private KeyScheme targetScheme;
+
+    @Value("${spring.app.keyScheme.migration.enabled}")
+    private boolean enabled;
+
+    @Value("${spring.app.keyScheme.migration.batchSize}")
+    private int batchSize;
+
+    private final Set<Long> pendingUsers = ConcurrentHashMap.newKeySet();
+
+    // Walks the file table in id order so rows that keep failing cannot starve the rest
+    private volatile long lastFileId;
+
+    public void requestMigration(User user) {
+        if (enabled && userKeyService.getKeyScheme(user) != targetScheme) {
+            pendingUsers.add(user.getUserId());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${spring.app.keyScheme.migration.intervalMs}", fixedDelayString = "${spring.app.keyScheme.migration.intervalMs}")
+    public void migrateKeys() {
+        if (!enabled) {
+            return;
+        }
+
+        List<Long> userIds = new ArrayList<>(pendingUsers);
+        pendingUsers.removeAll(userIds);
+        for (Long userId : userIds) {
+            try {
+                if (upgradeUser(userId)) {
+                    logger.info("Moved user ID {} to the {} key scheme", userId, targetScheme);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Failed to move user ID {} to the {} key scheme", userId, targetScheme, e);
+            }
+        }
+
+        List<Long> fileIds = fileRepository.findIdsWrappedBehindOwner(targetScheme, lastFileId, PageRequest.of(0, batchSize));
+        lastFileId = fileIds.size() < batchSize ? 0 : fileIds.get(fileIds.size() - 1);
+        int rewrapped = 0;
+        for (Long fileId : fileIds) {
+            try {
+                if (rewrapFile(fileId)) {
+                    rewrapped++;
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to re-wrap the content key of file ID {}", fileId, e);
+            }
+        }
+        if (rewrapped > 0) {
+            logger.info("Re-wrapped {} content keys under the {} key scheme", rewrapped, targetScheme);
+        }
+    }
+
+    // The row lock keeps two nodes from generating different keys for the same user
+    public boolean upgradeUser(Long userId) {
+        Boolean upgraded = transactionTemplate.execute(status -> {
+            User user = userRepository.findWithLockByUserId(userId).orElse(null);
+            if (user == null || userKeyService.getKeyScheme(user) == targetScheme) {
+                return false;
+            }
+            try {
+                userKeyService.provisionKeys(user, targetScheme);
+            } catch (Exception e) {
+                throw new RuntimeException("Key generation failed for user ID " + userId, e);
+            }
+            userRepository.save(user);
+            return true;
+        });
+        if (Boolean.TRUE.equals(upgraded)) {
+            userKeyService.invalidate(userId);
+        }
+        return Boolean.TRUE.equals(upgraded);
+    }
+
+    public boolean rewrapFile(Long fileId) {
+        Boolean rewrapped = transactionTemplate.execute(status -> {
+            File file = fileRepository.findById(fileId).orElse(null);
+            if (file == null) {
+                return false;
+            }
+            User owner = userRepository.findById(file.getOwnerId()).orElse(null);
+            if (owner == null || userKeyService.getKeyScheme(owner) == KeyScheme.orDefault(file.getKeyScheme())) {
+                return false;
+            }
+            byte[] aesKeyBytes = null;
+            try {
+                aesKeyBytes = userKeyService.unwrapKey(owner, file.getKeyScheme(), file.getEncryptedAesKey());
+                file.setEncryptedAesKey(userKeyService.wrapKey(owner, aesKeyBytes));
+                file.setKeyScheme(userKeyService.getKeyScheme(owner));
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to re-wrap the content key of file ID " + fileId, e);
+            } finally {
+                if (aesKeyBytes != null) {
+                    Arrays.fill(aesKeyBytes, (byte) 0);
+                }
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(rewrapped);
+    }
+}
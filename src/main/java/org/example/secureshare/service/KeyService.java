@@ -1,15 +1,25 @@
 package org.example.secureshare.service;
 
+import org.example.secureshare.crypto.AesGcmStreamDecryptor;
+import org.example.secureshare.crypto.SegmentedAesGcm;
+import org.example.secureshare.crypto.SegmentedAesGcmChunkEncryptor;
+import org.example.secureshare.crypto.SegmentedAesGcmDecryptor;
+import org.example.secureshare.crypto.SegmentedAesGcmEncryptingInputStream;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 @Service
@@ -19,43 +29,110 @@ public class KeyService {
     private static final int GCM_TAG_LENGTH = 16;
     private static final int AES_KEY_SIZE = 256;
 
+    public static final String RSA = "RSA";
+    public static final String X25519 = "X25519";
+    public static final String ED25519 = "Ed25519";
+
+    private static final String AES_GCM = "AES/GCM/NoPadding";
+    private static final String RSA_OAEP = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final String HMAC_SHA256 = "HmacSHA256";
+
+    // X.509 encoding of an X25519 public key, which prefixes every X25519-wrapped key
+    private static final int X25519_PUBLIC_KEY_LENGTH = 44;
+    private static final byte[] KEY_WRAP_INFO = "secureshare x25519 aes-256-gcm key wrap v1".getBytes(StandardCharsets.US_ASCII);
+
+    // Provider lookups are expensive and these objects are not thread-safe, so each thread keeps its own.
+    // Every use re-initialises them, so no state carries over between calls.
+    private static final ThreadLocal<Cipher> AES_GCM_CIPHER = perThread(() -> Cipher.getInstance(AES_GCM));
+    private static final ThreadLocal<Cipher> RSA_OAEP_CIPHER = perThread(() -> Cipher.getInstance(RSA_OAEP));
+    private static final ThreadLocal<Signature> RSA_SIGNATURE = perThread(() -> Signature.getInstance("SHA256withRSA"));
+    private static final ThreadLocal<Signature> ED25519_SIGNATURE = perThread(() -> Signature.getInstance(ED25519));
+    private static final ThreadLocal<KeyAgreement> X25519_AGREEMENT = perThread(() -> KeyAgreement.getInstance(X25519));
+    private static final ThreadLocal<KeyPairGenerator> X25519_GENERATOR = perThread(() -> KeyPairGenerator.getInstance(X25519));
+    private static final ThreadLocal<Mac> HMAC = perThread(() -> Mac.getInstance(HMAC_SHA256));
+    private static final ThreadLocal<KeyFactory> RSA_KEY_FACTORY = perThread(() -> KeyFactory.getInstance(RSA));
+    private static final ThreadLocal<KeyFactory> X25519_KEY_FACTORY = perThread(() -> KeyFactory.getInstance(X25519));
+    private static final ThreadLocal<KeyFactory> ED25519_KEY_FACTORY = perThread(() -> KeyFactory.getInstance(ED25519));
+
+    // DRBG is registered as thread-safe, so one instance serves every thread without a global lock
+    private static final SecureRandom RANDOM = newDrbg();
+
     @Value("${MASTER_KEY}")
     private String masterKeyBase64;
 
-    private SecretKey getMasterKey() {
+    private SecretKey masterKey;
+
+    @PostConstruct
+    public void init() {
         byte[] decodedKey = Base64.getDecoder().decode(masterKeyBase64);
-        return new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
+        masterKey = new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
+    }
+
+    private interface CryptoFactory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> ThreadLocal<T> perThread(CryptoFactory<T> factory) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return factory.create();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static KeyFactory keyFactory(String algorithm) {
+        return switch (algorithm) {
+            case RSA -> RSA_KEY_FACTORY.get();
+            case X25519 -> X25519_KEY_FACTORY.get();
+            case ED25519 -> ED25519_KEY_FACTORY.get();
+            default -> throw new IllegalArgumentException("Unsupported key algorithm: " + algorithm);
+        };
+    }
+
+    private static SecureRandom newDrbg() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
     }
 
     public String encryptPrivateKey(PrivateKey privateKey) throws Exception {
-        byte[] privateKeyBytes = privateKey.getEncoded();
-        SecretKey masterKey = getMasterKey();
-        byte[] iv = new byte[GCM_IV_LENGTH];
-        new SecureRandom().nextBytes(iv);
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-        cipher.init(Cipher.ENCRYPT_MODE, masterKey, gcmParameterSpec);
-        byte[] encryptedKeyBytes = cipher.doFinal(privateKeyBytes);
-        byte[] combined = new byte[iv.length + encryptedKeyBytes.length];
-        System.arraycopy(iv, 0, combined, 0, iv.length);
-        System.arraycopy(encryptedKeyBytes, 0, combined, iv.length, encryptedKeyBytes.length);
-        return Base64.getEncoder().encodeToString(combined);
+        return encryptWithMasterKey(privateKey.getEncoded());
     }
 
     public PrivateKey decryptPrivateKey(String encryptedPrivateKeyBase64) throws Exception {
-        byte[] encryptedCombined = Base64.getDecoder().decode(encryptedPrivateKeyBase64);
-        byte[] iv = new byte[GCM_IV_LENGTH];
-        System.arraycopy(encryptedCombined, 0, iv, 0, iv.length);
-        byte[] encryptedKeyBytes = new byte[encryptedCombined.length - GCM_IV_LENGTH];
-        System.arraycopy(encryptedCombined, GCM_IV_LENGTH, encryptedKeyBytes, 0, encryptedKeyBytes.length);
-        SecretKey masterKey = getMasterKey();
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-        GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-        cipher.init(Cipher.DECRYPT_MODE, masterKey, gcmParameterSpec);
-        byte[] decryptedKeyBytes = cipher.doFinal(encryptedKeyBytes);
+        return decryptPrivateKey(encryptedPrivateKeyBase64, RSA);
+    }
+
+    public PrivateKey decryptPrivateKey(String encryptedPrivateKeyBase64, String algorithm) throws Exception {
+        byte[] decryptedKeyBytes = decryptWithMasterKey(encryptedPrivateKeyBase64);
         PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(decryptedKeyBytes);
-        KeyFactory kf = KeyFactory.getInstance("RSA");
-        return kf.generatePrivate(spec);
+        try {
+            return keyFactory(algorithm).generatePrivate(spec);
+        } finally {
+            Arrays.fill(decryptedKeyBytes, (byte) 0);
+        }
+    }
+
+    // Server-side secrets at rest: Base64 of IV || AES-GCM ciphertext under the master key
+    public String encryptWithMasterKey(byte[] data) throws Exception {
+        byte[] iv = generateIV();
+        Cipher cipher = AES_GCM_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, masterKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+        byte[] combined = new byte[iv.length + cipher.getOutputSize(data.length)];
+        System.arraycopy(iv, 0, combined, 0, iv.length);
+        cipher.doFinal(data, 0, data.length, combined, iv.length);
+        return Base64.getEncoder().encodeToString(combined);
+    }
+
+    public byte[] decryptWithMasterKey(String encryptedBase64) throws Exception {
+        byte[] encryptedCombined = Base64.getDecoder().decode(encryptedBase64);
+        Cipher cipher = AES_GCM_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, encryptedCombined, 0, GCM_IV_LENGTH));
+        return cipher.doFinal(encryptedCombined, GCM_IV_LENGTH, encryptedCombined.length - GCM_IV_LENGTH);
     }
 
     public KeyPair generateRsaKeyPair() throws NoSuchAlgorithmException {
@@ -64,33 +141,104 @@ public class KeyService {
         return keyPairGenerator.generateKeyPair();
     }
 
+    public KeyPair generateX25519KeyPair() {
+        return X25519_GENERATOR.get().generateKeyPair();
+    }
+
+    public KeyPair generateEd25519KeyPair() throws NoSuchAlgorithmException {
+        return KeyPairGenerator.getInstance(ED25519).generateKeyPair();
+    }
+
     public String encodePublicKey(PublicKey publicKey) { return Base64.getEncoder().encodeToString(publicKey.getEncoded()); }
 
     public String encodePrivateKey(PrivateKey privateKey) { return Base64.getEncoder().encodeToString(privateKey.getEncoded()); }
 
     public PublicKey decodePublicKey(String base64PublicKey) throws Exception {
+        return decodePublicKey(base64PublicKey, RSA);
+    }
+
+    public PublicKey decodePublicKey(String base64PublicKey, String algorithm) throws Exception {
         byte[] keyBytes = Base64.getDecoder().decode(base64PublicKey);
         X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
-        KeyFactory kf = KeyFactory.getInstance("RSA");
-        return kf.generatePublic(spec);
+        return keyFactory(algorithm).generatePublic(spec);
     }
 
     public byte[] encryptWithRsa(byte[] data, PublicKey publicKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher cipher = RSA_OAEP_CIPHER.get();
         cipher.init(Cipher.ENCRYPT_MODE, publicKey);
         return cipher.doFinal(data);
     }
 
     public byte[] decryptWithRsa(byte[] encryptedData, PrivateKey privateKey) throws Exception {
-        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        Cipher cipher = RSA_OAEP_CIPHER.get();
         cipher.init(Cipher.DECRYPT_MODE, privateKey);
         return cipher.doFinal(encryptedData);
     }
 
+    // Ephemeral-static X25519, HKDF-SHA256 to a one-off AES-256 key, then AES-GCM over the data.
+    // Output is the ephemeral public key (X.509) || IV || ciphertext and tag; the ephemeral key is also the AAD.
+    public byte[] wrapWithX25519(byte[] data, PublicKey recipientPublicKey) throws Exception {
+        KeyPair ephemeral = generateX25519KeyPair();
+        byte[] ephemeralPublic = ephemeral.getPublic().getEncoded();
+        SecretKey wrappingKey = deriveWrappingKey(ephemeral.getPrivate(), recipientPublicKey, ephemeralPublic);
+        byte[] iv = generateIV();
+
+        Cipher cipher = AES_GCM_CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv));
+        cipher.updateAAD(ephemeralPublic);
+        byte[] wrapped = new byte[ephemeralPublic.length + iv.length + cipher.getOutputSize(data.length)];
+        System.arraycopy(ephemeralPublic, 0, wrapped, 0, ephemeralPublic.length);
+        System.arraycopy(iv, 0, wrapped, ephemeralPublic.length, iv.length);
+        cipher.doFinal(data, 0, data.length, wrapped, ephemeralPublic.length + iv.length);
+        return wrapped;
+    }
+
+    public byte[] unwrapWithX25519(byte[] wrapped, PrivateKey recipientPrivateKey) throws Exception {
+        int headerLength = X25519_PUBLIC_KEY_LENGTH + GCM_IV_LENGTH;
+        if (wrapped.length < headerLength + GCM_TAG_LENGTH) {
+            throw new GeneralSecurityException("Wrapped key is truncated.");
+        }
+        byte[] ephemeralPublic = Arrays.copyOf(wrapped, X25519_PUBLIC_KEY_LENGTH);
+        PublicKey ephemeralKey = X25519_KEY_FACTORY.get().generatePublic(new X509EncodedKeySpec(ephemeralPublic));
+        SecretKey wrappingKey = deriveWrappingKey(recipientPrivateKey, ephemeralKey, ephemeralPublic);
+
+        Cipher cipher = AES_GCM_CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_LENGTH * 8, wrapped, X25519_PUBLIC_KEY_LENGTH, GCM_IV_LENGTH));
+        cipher.updateAAD(ephemeralPublic);
+        return cipher.doFinal(wrapped, headerLength, wrapped.length - headerLength);
+    }
+
+    private SecretKey deriveWrappingKey(PrivateKey privateKey, PublicKey publicKey, byte[] salt) throws GeneralSecurityException {
+        KeyAgreement agreement = X25519_AGREEMENT.get();
+        agreement.init(privateKey);
+        agreement.doPhase(publicKey, true);
+        byte[] sharedSecret = agreement.generateSecret();
+        try {
+            return new SecretKeySpec(hkdfSha256(sharedSecret, salt, KEY_WRAP_INFO), "AES");
+        } finally {
+            Arrays.fill(sharedSecret, (byte) 0);
+        }
+    }
+
+    // RFC 5869 with a single expand block, which is exactly one 256-bit key
+    private static byte[] hkdfSha256(byte[] inputKeyMaterial, byte[] salt, byte[] info) throws GeneralSecurityException {
+        Mac mac = HMAC.get();
+        mac.init(new SecretKeySpec(salt, HMAC_SHA256));
+        byte[] pseudoRandomKey = mac.doFinal(inputKeyMaterial);
+        try {
+            mac.init(new SecretKeySpec(pseudoRandomKey, HMAC_SHA256));
+            mac.update(info);
+            mac.update((byte) 1);
+            return mac.doFinal();
+        } finally {
+            Arrays.fill(pseudoRandomKey, (byte) 0);
+        }
+    }
+
     public SecretKey generateAesKey() throws NoSuchAlgorithmException {
-        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
-        keyGen.init(AES_KEY_SIZE, new SecureRandom());
-        return keyGen.generateKey();
+        byte[] keyBytes = new byte[AES_KEY_SIZE / 8];
+        RANDOM.nextBytes(keyBytes);
+        return new SecretKeySpec(keyBytes, "AES");
     }
 
     public byte[] getAesKeyBytes(SecretKey secretKey) {
@@ -102,14 +250,34 @@ public class KeyService {
     }
 
     public byte[] encryptWithAesGcm(byte[] data, SecretKey key, byte[] iv) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher cipher = AES_GCM_CIPHER.get();
         GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
         cipher.init(Cipher.ENCRYPT_MODE, key, gcmParameterSpec);
         return cipher.doFinal(data);
     }
 
+    // Streams hold their cipher for the whole transfer, so they get a dedicated instance rather than the thread's one
+    public SegmentedAesGcmEncryptingInputStream encryptingStream(InputStream plaintext, SecretKey key, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(AES_GCM);
+        return new SegmentedAesGcmEncryptingInputStream(plaintext, cipher, key, iv, SegmentedAesGcm.DEFAULT_SEGMENT_SIZE);
+    }
+
+    public SegmentedAesGcmChunkEncryptor chunkEncryptor(SecretKey key, byte[] iv, long plaintextLength) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(AES_GCM);
+        return new SegmentedAesGcmChunkEncryptor(cipher, key, iv, SegmentedAesGcm.DEFAULT_SEGMENT_SIZE, plaintextLength);
+    }
+
+    public SegmentedAesGcmDecryptor segmentDecryptor(SecretKey key, byte[] iv) throws GeneralSecurityException {
+        return new SegmentedAesGcmDecryptor(Cipher.getInstance(AES_GCM), key, iv);
+    }
+
+    // Content written before the segmented format is a single GCM ciphertext with a separate tag
+    public AesGcmStreamDecryptor decryptingStream(SecretKey key, byte[] iv, byte[] authTag) throws GeneralSecurityException {
+        return new AesGcmStreamDecryptor(key, iv, authTag);
+    }
+
     public byte[] decryptWithAesGcm(byte[] encryptedData, SecretKey key, byte[] iv) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        Cipher cipher = AES_GCM_CIPHER.get();
         GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
         cipher.init(Cipher.DECRYPT_MODE, key, gcmParameterSpec);
         return cipher.doFinal(encryptedData);
@@ -117,21 +285,35 @@ public class KeyService {
 
     public byte[] generateIV() {
         byte[] iv = new byte[GCM_IV_LENGTH];
-        new SecureRandom().nextBytes(iv);
+        RANDOM.nextBytes(iv);
         return iv;
     }
 
     public byte[] signData(byte[] data, PrivateKey privateKey) throws Exception {
-        Signature signature = Signature.getInstance("SHA256withRSA");
+        Signature signature = RSA_SIGNATURE.get();
         signature.initSign(privateKey);
         signature.update(data);
         return signature.sign();
     }
 
     public boolean verifySignature(byte[] data, byte[] signature, PublicKey publicKey) throws Exception {
-        Signature verifier = Signature.getInstance("SHA256withRSA");
+        Signature verifier = RSA_SIGNATURE.get();
+        verifier.initVerify(publicKey);
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+
+    public byte[] signWithEd25519(byte[] data, PrivateKey privateKey) throws Exception {
+        Signature signature = ED25519_SIGNATURE.get();
+        signature.initSign(privateKey);
+        signature.update(data);
+        return signature.sign();
+    }
+
+    public boolean verifyEd25519(byte[] data, byte[] signature, PublicKey publicKey) throws Exception {
+        Signature verifier = ED25519_SIGNATURE.get();
         verifier.initVerify(publicKey);
         verifier.update(data);
         return verifier.verify(signature);
     }
-}
\ No newline at end of file
+}
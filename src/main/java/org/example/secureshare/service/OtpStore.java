@@ -0,0 +1,24 @@
+package org.example.secureshare.service;
+
+import org.example.secureshare.model.Otp;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Where issued OTPs live until they are used or expire. At most one OTP per email; saving a new one replaces it.
+ * Selected with {@code spring.app.otp.store}: {@code memory} for a single node, {@code database} when several nodes
+ * must see the same OTPs.
+ */
+public interface OtpStore {
+
+    void save(String email, String otpCode, LocalDateTime expiresAt);
+
+    /** May return an expired OTP that has not been purged yet; callers compare the expiry themselves. */
+    Optional<Otp> find(String email);
+
+    /** Removes the OTP only if it matches and has not expired, so a code can be used once even under concurrent checks. */
+    boolean consume(String email, String otpCode);
+
+    void remove(String email);
+}
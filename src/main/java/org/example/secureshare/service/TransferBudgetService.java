@@ -0,0 +1,126 @@
+package org.example.secureshare.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Admission control for uploads and downloads. Every transfer reserves an estimate of the memory it will hold
+// from a node-wide budget before it starts; callers that cannot get a reservation in time are turned away.
+// Transfers stream, so the estimate is the transfer size capped at one stream's working set of buffers.
+@Service
+public class TransferBudgetService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferBudgetService.class);
+
+    private static final long KIB = 1024;
+
+    // Permits are KiB so budgets of several GB still fit in an int
+    private final Semaphore permits;
+    private final int capacityKb;
+    private final long perStreamBytes;
+    private final long queueTimeoutMs;
+    private final int retryAfterSeconds;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter rejected;
+
+    public TransferBudgetService(@Value("${spring.app.transfer.memoryBudgetMb}") int memoryBudgetMb,
+                                 @Value("${spring.app.transfer.perStreamEstimateKb}") int perStreamEstimateKb,
+                                 @Value("${spring.app.transfer.queueTimeoutMs}") long queueTimeoutMs,
+                                 @Value("${spring.app.transfer.retryAfterSeconds}") int retryAfterSeconds,
+                                 MeterRegistry meterRegistry) {
+        this.capacityKb = memoryBudgetMb * 1024;
+        this.permits = new Semaphore(capacityKb, true);
+        this.perStreamBytes = perStreamEstimateKb * KIB;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        Gauge.builder("secureshare.transfer.budget.capacity", () -> capacityKb * KIB).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("secureshare.transfer.budget.reserved", reservedBytes, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("secureshare.transfer.budget.queued", waiting, AtomicInteger::get).register(meterRegistry);
+        this.rejected = Counter.builder("secureshare.transfer.budget.rejected").register(meterRegistry);
+    }
+
+    // An unknown size (-1, e.g. a chunked request body) is charged a whole stream's share
+    public long estimate(long transferSize) {
+        if (transferSize < 0) {
+            return perStreamBytes;
+        }
+        return Math.min(Math.max(transferSize, KIB), perStreamBytes);
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * Waits up to the configured timeout for {@code bytes} of budget. Returns empty when the budget stays
+     * exhausted, in which case the caller should answer 503 with Retry-After.
+     */
+    public Optional<Reservation> tryAcquire(long bytes) {
+        int kb = kilobytes(bytes);
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(kb, queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                logger.warn("Transfer budget exhausted; rejected reservation of {} KiB", kb);
+                return Optional.empty();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        reservedBytes.addAndGet(kb * KIB);
+        return Optional.of(new Reservation(kb));
+    }
+
+    private int kilobytes(long bytes) {
+        return (int) Math.min(capacityKb, Math.max(1, (bytes + KIB - 1) / KIB));
+    }
+
+    private void release(int kb) {
+        reservedBytes.addAndGet(-kb * KIB);
+        permits.release(kb);
+    }
+
+    public class Reservation implements AutoCloseable {
+
+        private int kb;
+        private boolean released;
+
+        private Reservation(int kb) {
+            this.kb = kb;
+        }
+
+        // Hands back whatever was reserved beyond bytes, for callers that admit before they know the size
+        public synchronized void shrinkTo(long bytes) {
+            int needed = kilobytes(bytes);
+            if (!released && needed < kb) {
+                release(kb - needed);
+                kb = needed;
+            }
+        }
+
+        // Safe to call more than once; streamed responses release from the body and when the request ends
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                release(kb);
+            }
+        }
+    }
+}
@@ -0,0 +1,395 @@
+package org.example.secureshare.service;
+
+import org.example.secureshare.crypto.SegmentedAesGcm;
+import org.example.secureshare.crypto.SegmentedAesGcmChunkEncryptor;
+import org.example.secureshare.model.UploadChunk;
+import org.example.secureshare.model.UploadSession;
+import org.example.secureshare.model.User;
+import org.example.secureshare.payload.fiteDTO.CreateUploadSessionRequest;
+import org.example.secureshare.payload.fiteDTO.UploadSessionResponse;
+import org.example.secureshare.repository.UploadChunkRepository;
+import org.example.secureshare.repository.UploadSessionRepository;
+import org.example.secureshare.storage.BlobStore;
+import org.example.secureshare.util.AuthUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PostConstruct;
+import javax.crypto.SecretKey;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+
+// Resumable uploads: each chunk is encrypted into its place in a staged container file as it arrives,
+// so committing only has to hash the staged file, check it against the accepted chunks and publish it.
+@Service
+public class UploadSessionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSessionService.class);
+
+    private static final String STAGED_SUFFIX = ".part";
+    private static final String ATTEMPT_SUFFIX = ".attempt";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private UploadChunkRepository uploadChunkRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private KeyService keyService;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private AuthUtil authUtil;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${spring.app.uploadSession.stagingDir}")
+    private String stagingDirPath;
+
+    @Value("${spring.app.uploadSession.chunkSize}")
+    private int chunkSize;
+
+    @Value("${spring.app.uploadSession.maxFileSize}")
+    private long maxFileSize;
+
+    @Value("${spring.app.uploadSession.ttlMs}")
+    private long ttlMs;
+
+    private Path stagingDir;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (chunkSize <= 0 || chunkSize % SegmentedAesGcm.DEFAULT_SEGMENT_SIZE != 0) {
+            throw new IllegalStateException("spring.app.uploadSession.chunkSize must be a multiple of " + SegmentedAesGcm.DEFAULT_SEGMENT_SIZE);
+        }
+        stagingDir = Path.of(stagingDirPath).toAbsolutePath().normalize();
+        Files.createDirectories(stagingDir);
+    }
+
+    public UploadSessionResponse createSession(CreateUploadSessionRequest request) {
+        try {
+            Long ownerId = authUtil.getLoggedInUserId();
+            if (request.getFilename() == null || request.getFilename().isBlank()) {
+                throw new IllegalArgumentException("Filename is required.");
+            }
+            if (request.getSize() == null || request.getSize() <= 0) {
+                throw new IllegalArgumentException("File cannot be empty.");
+            }
+            if (request.getSize() > maxFileSize) {
+                throw new IllegalArgumentException("File exceeds the maximum upload size of " + maxFileSize + " bytes.");
+            }
+
+            SecretKey aesKey = keyService.generateAesKey();
+            byte[] iv = keyService.generateIV();
+
+            UploadSession session = new UploadSession();
+            session.setId(UUID.randomUUID().toString());
+            session.setOwnerId(ownerId);
+            session.setFilename(request.getFilename());
+            session.setDescription(request.getDescription());
+            session.setCategory(request.getCategory());
+            session.setContentType(request.getContentType() != null ? request.getContentType() : "application/octet-stream");
+            session.setTotalSize(request.getSize());
+            session.setChunkSize(chunkSize);
+            session.setChunkCount((int) ((request.getSize() + chunkSize - 1) / chunkSize));
+            session.setIv(Base64.getEncoder().encodeToString(iv));
+            session.setEncryptedAesKey(keyService.encryptWithMasterKey(keyService.getAesKeyBytes(aesKey)));
+            session.setCreatedAt(LocalDateTime.now());
+            session.setExpiresAt(LocalDateTime.now().plus(Duration.ofMillis(ttlMs)));
+
+            // The container header goes in first; chunks are written at their own offsets behind it
+            SegmentedAesGcmChunkEncryptor encryptor = keyService.chunkEncryptor(aesKey, iv, session.getTotalSize());
+            try (FileChannel channel = FileChannel.open(stagedFile(session.getId()), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(encryptor.header()), 0);
+            }
+            uploadSessionRepository.save(session);
+
+            return toResponse(session, List.of());
+        } catch (IllegalArgumentException | NoSuchElementException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to create upload session.", e);
+        }
+    }
+
+    public UploadSessionResponse getSession(String sessionId) {
+        UploadSession session = findActiveSession(sessionId);
+        return toResponse(session, uploadChunkRepository.findChunkIndexesBySessionId(sessionId));
+    }
+
+    // Not transactional: the chunk is streamed to disk without holding a database connection.
+    // Every attempt encrypts into a file of its own; only one whose ciphertext matches the claimed
+    // upload_chunk row is copied into the staged container, so a concurrent or retried PUT with other
+    // content is rejected before any of its bytes reach the container.
+    public UploadSessionResponse putChunk(String sessionId, int chunkIndex, InputStream body) {
+        UploadSession session = findActiveSession(sessionId);
+        if (chunkIndex < 0 || chunkIndex >= session.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk index must be between 0 and " + (session.getChunkCount() - 1) + ".");
+        }
+        long offset = (long) chunkIndex * session.getChunkSize();
+        long length = Math.min(session.getChunkSize(), session.getTotalSize() - offset);
+
+        Path attempt = stagingDir.resolve(UUID.fromString(sessionId) + "." + chunkIndex + "." + UUID.randomUUID() + ATTEMPT_SUFFIX);
+        try {
+            SecretKey aesKey = keyService.getAesKeyFromBytes(keyService.decryptWithMasterKey(session.getEncryptedAesKey()));
+            byte[] iv = Base64.getDecoder().decode(session.getIv());
+            SegmentedAesGcmChunkEncryptor encryptor = keyService.chunkEncryptor(aesKey, iv, session.getTotalSize());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(attempt, StandardOpenOption.CREATE_NEW), COPY_BUFFER_SIZE)) {
+                encryptor.encrypt(body, offset, length, new DigestOutputStream(out, digest));
+            }
+            claimChunk(sessionId, chunkIndex, HexFormat.of().formatHex(digest.digest()));
+
+            // Equal hashes mean equal plaintext under the session's fixed nonces, so copies of a retried
+            // chunk write identical bytes; a retry also repairs a copy cut short by a crash
+            try (FileChannel source = FileChannel.open(attempt, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(stagedFile(sessionId), StandardOpenOption.WRITE)) {
+                target.position(encryptor.ciphertextOffset(offset));
+                long size = source.size();
+                long copied = 0;
+                while (copied < size) {
+                    copied += source.transferTo(copied, size - copied, target);
+                }
+                target.force(false);
+            }
+
+            LocalDateTime expiresAt = LocalDateTime.now().plus(Duration.ofMillis(ttlMs));
+            uploadSessionRepository.extendExpiry(sessionId, expiresAt);
+            session.setExpiresAt(expiresAt);
+            return toResponse(session, uploadChunkRepository.findChunkIndexesBySessionId(sessionId));
+        } catch (IllegalArgumentException | IllegalStateException | NoSuchElementException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to store chunk " + chunkIndex + ".", e);
+        } finally {
+            try {
+                Files.deleteIfExists(attempt);
+            } catch (IOException e) {
+                logger.error("Failed to delete chunk attempt {}", attempt, e);
+            }
+        }
+    }
+
+    // The first accepted ciphertext of a chunk is final; every later attempt has to match it
+    private void claimChunk(String sessionId, int chunkIndex, String ciphertextHash) {
+        UploadChunk existing = uploadChunkRepository.findBySessionIdAndChunkIndex(sessionId, chunkIndex).orElse(null);
+        if (existing == null) {
+            UploadChunk chunk = new UploadChunk();
+            chunk.setSessionId(sessionId);
+            chunk.setChunkIndex(chunkIndex);
+            chunk.setCiphertextHash(ciphertextHash);
+            try {
+                uploadChunkRepository.save(chunk);
+                return;
+            } catch (DataIntegrityViolationException e) {
+                // A concurrent attempt claimed it first
+                existing = uploadChunkRepository.findBySessionIdAndChunkIndex(sessionId, chunkIndex)
+                        .orElseThrow(() -> new IllegalStateException("Chunk " + chunkIndex + " is being uploaded concurrently."));
+            }
+        }
+        if (!existing.getCiphertextHash().equals(ciphertextHash)) {
+            throw new IllegalStateException("Chunk " + chunkIndex + " was already uploaded with different content.");
+        }
+    }
+
+    // The staged file is read outside the transaction, so a large upload holds no connection or lock meanwhile
+    public Long commit(String sessionId) {
+        UploadSession session = findActiveSession(sessionId);
+        List<UploadChunk> chunks = uploadChunkRepository.findBySessionIdOrderByChunkIndex(sessionId);
+        if (chunks.size() != session.getChunkCount()) {
+            throw new IllegalStateException("Upload incomplete: " + chunks.size() + " of " + session.getChunkCount() + " chunks received.");
+        }
+
+        try {
+            User owner = authUtil.getLoggedInUser();
+            SecretKey aesKey = keyService.getAesKeyFromBytes(keyService.decryptWithMasterKey(session.getEncryptedAesKey()));
+            byte[] iv = Base64.getDecoder().decode(session.getIv());
+            String blobRef = hashStagedFile(session, keyService.chunkEncryptor(aesKey, iv, session.getTotalSize()), chunks);
+
+            // Published before the rows change and without consuming the staged file, so a failed transaction can
+            // simply be retried; blobs are content-addressed, so publishing the same file again is harmless
+            blobStore.adopt(stagedFile(sessionId), blobRef);
+
+            return transactionTemplate.execute(status -> {
+                // Locked so concurrent commits of the same session cannot both create a file
+                checkActive(uploadSessionRepository.findWithLockById(sessionId), sessionId);
+                try {
+                    Long fileId = fileService.saveEncryptedUpload(owner, session.getFilename(), session.getDescription(),
+                            session.getCategory(), session.getContentType(), aesKey, iv, blobRef);
+                    uploadChunkRepository.deleteBySessionId(sessionId);
+                    uploadSessionRepository.deleteById(sessionId);
+
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            deleteStagedFile(sessionId);
+                        }
+                    });
+                    return fileId;
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to commit upload session.", e);
+                }
+            });
+        } catch (NoSuchElementException | IllegalArgumentException | IllegalStateException | SecurityException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to commit upload session.", e);
+        }
+    }
+
+    public void abort(String sessionId) {
+        discard(findActiveSession(sessionId).getId());
+    }
+
+    @Scheduled(initialDelayString = "${spring.app.uploadSession.cleanupIntervalMs}", fixedDelayString = "${spring.app.uploadSession.cleanupIntervalMs}")
+    public void deleteExpiredSessions() {
+        List<String> expired = uploadSessionRepository.findExpiredIds(LocalDateTime.now());
+        for (String sessionId : expired) {
+            discard(sessionId);
+        }
+
+        // Staged files whose session row was never written or already removed, and attempts left by a crash
+        Instant cutoff = Instant.now().minusMillis(ttlMs);
+        try (DirectoryStream<Path> staged = Files.newDirectoryStream(stagingDir)) {
+            for (Path path : staged) {
+                String name = path.getFileName().toString();
+                if (!Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+                    continue;
+                }
+                if (name.endsWith(ATTEMPT_SUFFIX)
+                        || name.endsWith(STAGED_SUFFIX) && !uploadSessionRepository.existsById(name.substring(0, name.length() - STAGED_SUFFIX.length()))) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to sweep upload staging directory {}", stagingDir, e);
+        }
+
+        if (!expired.isEmpty()) {
+            logger.info("Removed {} expired upload sessions", expired.size());
+        }
+    }
+
+    private void discard(String sessionId) {
+        uploadChunkRepository.deleteBySessionId(sessionId);
+        uploadSessionRepository.deleteById(sessionId);
+        deleteStagedFile(sessionId);
+    }
+
+    // Left behind on failure; the sweep removes staged files whose session is gone
+    private void deleteStagedFile(String sessionId) {
+        try {
+            Files.deleteIfExists(stagedFile(sessionId));
+        } catch (IOException e) {
+            logger.error("Failed to delete staged upload {}", sessionId, e);
+        }
+    }
+
+    private UploadSession findActiveSession(String sessionId) {
+        return checkActive(uploadSessionRepository.findById(sessionId), sessionId);
+    }
+
+    private UploadSession checkActive(Optional<UploadSession> found, String sessionId) {
+        UploadSession session = found
+                .orElseThrow(() -> new NoSuchElementException("Upload session not found: " + sessionId));
+        if (!session.getOwnerId().equals(authUtil.getLoggedInUserId())) {
+            throw new SecurityException("User is not authorized to access this upload session.");
+        }
+        if (session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new NoSuchElementException("Upload session has expired: " + sessionId);
+        }
+        return session;
+    }
+
+    // Session ids are generated UUIDs; anything else never reaches the file system
+    private Path stagedFile(String sessionId) {
+        return stagingDir.resolve(UUID.fromString(sessionId) + STAGED_SUFFIX);
+    }
+
+    // Returns the SHA-256 of the staged container, which is its blob id like for any other blob. The same read
+    // checks every chunk against the ciphertext accepted for it; mismatching chunks have to be sent again.
+    private String hashStagedFile(UploadSession session, SegmentedAesGcmChunkEncryptor encryptor, List<UploadChunk> chunks) throws Exception {
+        MessageDigest fileDigest = MessageDigest.getInstance("SHA-256");
+        MessageDigest chunkDigest = MessageDigest.getInstance("SHA-256");
+        List<Integer> damaged = new ArrayList<>();
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+
+        try (InputStream in = Files.newInputStream(stagedFile(session.getId()))) {
+            byte[] header = in.readNBytes(SegmentedAesGcm.HEADER_LENGTH);
+            if (!Arrays.equals(header, encryptor.header())) {
+                throw new IllegalStateException("Staged upload " + session.getId() + " has a damaged header; start a new upload.");
+            }
+            fileDigest.update(header);
+
+            for (UploadChunk chunk : chunks) {
+                long offset = (long) chunk.getChunkIndex() * session.getChunkSize();
+                long remaining = encryptor.ciphertextLength(Math.min(session.getChunkSize(), session.getTotalSize() - offset));
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        break;
+                    }
+                    fileDigest.update(buffer, 0, read);
+                    chunkDigest.update(buffer, 0, read);
+                    remaining -= read;
+                }
+                if (remaining > 0 || !HexFormat.of().formatHex(chunkDigest.digest()).equals(chunk.getCiphertextHash())) {
+                    damaged.add(chunk.getChunkIndex());
+                }
+            }
+            if (in.read() != -1) {
+                throw new IllegalStateException("Staged upload " + session.getId() + " is longer than its chunks; start a new upload.");
+            }
+        }
+
+        if (!damaged.isEmpty()) {
+            throw new IllegalStateException("Chunks " + damaged + " were not stored intact; upload them again.");
+        }
+        return HexFormat.of().formatHex(fileDigest.digest());
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, List<Integer> receivedChunks) {
+        return new UploadSessionResponse(session.getId(), session.getTotalSize(), session.getChunkSize(),
+                session.getChunkCount(), receivedChunks, session.getExpiresAt());
+    }
+}
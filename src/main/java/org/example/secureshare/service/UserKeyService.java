@@ -0,0 +1,236 @@
+package org.example.secureshare.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.secureshare.model.KeyScheme;
+import org.example.secureshare.model.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.security.auth.DestroyFailedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+
+// Decoded key material per user, so hot paths stop re-running the master-key unwrap and ASN.1 parsing.
+// Private keys are only kept for a short TTL and are destroyed where the provider supports it when they leave.
+// Also the single place that knows which of a user's keys a KeyScheme maps to.
+@Service
+public class UserKeyService {
+
+    @Autowired
+    private KeyService keyService;
+
+    @Autowired
+    private KeyPairPoolService keyPairPoolService;
+
+    private final Cache<PrivateKeyId, PrivateKey> privateKeys;
+    private final Cache<PublicKeyId, PublicKey> publicKeys;
+    // Hashes of (key use, public key, data, signature) that verified; only successes are ever recorded
+    private final Cache<String, Boolean> verifiedSignatures;
+
+    // Which of the user's key pairs a cached key belongs to
+    private enum KeyUse {
+        RSA(KeyService.RSA),
+        EXCHANGE(KeyService.X25519),
+        SIGNING(KeyService.ED25519);
+
+        private final String algorithm;
+
+        KeyUse(String algorithm) {
+            this.algorithm = algorithm;
+        }
+    }
+
+    private record PrivateKeyId(Long userId, int keyVersion, KeyUse use) {
+    }
+
+    // Keyed by a fingerprint of the stored key, so a changed public key can never hit a stale entry
+    private record PublicKeyId(Long userId, KeyUse use, String fingerprint) {
+    }
+
+    public UserKeyService(@Value("${spring.app.keyCache.privateKeyTtlMs}") long privateKeyTtlMs,
+                          @Value("${spring.app.keyCache.privateKeyMaxSize}") long privateKeyMaxSize,
+                          @Value("${spring.app.keyCache.publicKeyMaxSize}") long publicKeyMaxSize,
+                          @Value("${spring.app.keyCache.verifiedSignatureMaxSize}") long verifiedSignatureMaxSize,
+                          MeterRegistry meterRegistry) {
+        this.privateKeys = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(privateKeyTtlMs))
+                .maximumSize(privateKeyMaxSize)
+                .recordStats()
+                .removalListener((PrivateKeyId id, PrivateKey key, RemovalCause cause) -> destroy(key))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, privateKeys, "userPrivateKeys");
+
+        this.publicKeys = Caffeine.newBuilder()
+                .maximumSize(publicKeyMaxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, publicKeys, "userPublicKeys");
+
+        this.verifiedSignatures = Caffeine.newBuilder()
+                .maximumSize(verifiedSignatureMaxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedSignatures, "verifiedSignatures");
+    }
+
+    public KeyScheme getKeyScheme(User user) {
+        return KeyScheme.orDefault(user.getKeyScheme());
+    }
+
+    // Generates the key pairs of the given scheme and makes it the user's current scheme. Existing keys are kept,
+    // so a user moving from RSA to EC can still open what was wrapped or signed for them under RSA.
+    public void provisionKeys(User user, KeyScheme scheme) throws Exception {
+        if (scheme == KeyScheme.EC) {
+            KeyPair exchange = keyService.generateX25519KeyPair();
+            KeyPair signing = keyService.generateEd25519KeyPair();
+            user.setExchangePublicKey(keyService.encodePublicKey(exchange.getPublic()));
+            user.setExchangePrivateKey(keyService.encryptPrivateKey(exchange.getPrivate()));
+            user.setSigningPublicKey(keyService.encodePublicKey(signing.getPublic()));
+            user.setSigningPrivateKey(keyService.encryptPrivateKey(signing.getPrivate()));
+        } else {
+            KeyPair keyPair = keyPairPoolService.takeRsaKeyPair();
+            user.setPublicKey(keyService.encodePublicKey(keyPair.getPublic()));
+            user.setPrivateKey(keyService.encryptPrivateKey(keyPair.getPrivate()));
+        }
+        user.setKeyScheme(scheme);
+        user.setKeyVersion(keyVersion(user) + 1);
+    }
+
+    // Wraps a content key for the user under their current scheme; record getKeyScheme(user) alongside it
+    public String wrapKey(User user, byte[] keyBytes) throws Exception {
+        byte[] wrapped = getKeyScheme(user) == KeyScheme.EC
+                ? keyService.wrapWithX25519(keyBytes, getPublicKey(user, KeyUse.EXCHANGE))
+                : keyService.encryptWithRsa(keyBytes, getPublicKey(user, KeyUse.RSA));
+        return Base64.getEncoder().encodeToString(wrapped);
+    }
+
+    public byte[] unwrapKey(User user, KeyScheme scheme, String wrappedKeyBase64) throws Exception {
+        byte[] wrapped = Base64.getDecoder().decode(wrappedKeyBase64);
+        return KeyScheme.orDefault(scheme) == KeyScheme.EC
+                ? keyService.unwrapWithX25519(wrapped, getPrivateKey(user, KeyUse.EXCHANGE))
+                : keyService.decryptWithRsa(wrapped, getPrivateKey(user, KeyUse.RSA));
+    }
+
+    // Signs under the user's current scheme; record getKeyScheme(user) alongside the signature
+    public String sign(User user, byte[] data) throws Exception {
+        byte[] signature = getKeyScheme(user) == KeyScheme.EC
+                ? keyService.signWithEd25519(data, getPrivateKey(user, KeyUse.SIGNING))
+                : keyService.signData(data, getPrivateKey(user, KeyUse.RSA));
+        return Base64.getEncoder().encodeToString(signature);
+    }
+
+    // A signature that verified once under a given public key always will, so repeat checks of the same inputs
+    // are answered from a cache keyed by a hash over all of them. Failures are never cached.
+    public boolean verify(User user, KeyScheme scheme, byte[] data, String signatureBase64) throws Exception {
+        KeyUse use = KeyScheme.orDefault(scheme) == KeyScheme.EC ? KeyUse.SIGNING : KeyUse.RSA;
+        String encodedPublicKey = getEncodedPublicKey(user, use);
+        String verificationId = verificationId(use, encodedPublicKey, data, signatureBase64);
+        if (verifiedSignatures.getIfPresent(verificationId) != null) {
+            return true;
+        }
+
+        byte[] signature = Base64.getDecoder().decode(signatureBase64);
+        PublicKey publicKey = getPublicKey(user, use);
+        boolean valid = use == KeyUse.SIGNING
+                ? keyService.verifyEd25519(data, signature, publicKey)
+                : keyService.verifySignature(data, signature, publicKey);
+        if (valid) {
+            verifiedSignatures.put(verificationId, Boolean.TRUE);
+        }
+        return valid;
+    }
+
+    private String getEncodedPublicKey(User user, KeyUse use) {
+        String encoded = switch (use) {
+            case RSA -> user.getPublicKey();
+            case EXCHANGE -> user.getExchangePublicKey();
+            case SIGNING -> user.getSigningPublicKey();
+        };
+        if (encoded == null) {
+            throw new IllegalStateException("User " + user.getUserId() + " has no " + use.algorithm + " public key.");
+        }
+        return encoded;
+    }
+
+    private PublicKey getPublicKey(User user, KeyUse use) throws Exception {
+        String encoded = getEncodedPublicKey(user, use);
+        PublicKeyId id = new PublicKeyId(user.getUserId(), use, fingerprint(encoded));
+        PublicKey cached = publicKeys.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        PublicKey publicKey = keyService.decodePublicKey(encoded, use.algorithm);
+        publicKeys.put(id, publicKey);
+        return publicKey;
+    }
+
+    private PrivateKey getPrivateKey(User user, KeyUse use) throws Exception {
+        String encrypted = switch (use) {
+            case RSA -> user.getPrivateKey();
+            case EXCHANGE -> user.getExchangePrivateKey();
+            case SIGNING -> user.getSigningPrivateKey();
+        };
+        if (encrypted == null) {
+            throw new IllegalStateException("User " + user.getUserId() + " has no " + use.algorithm + " private key.");
+        }
+        PrivateKeyId id = new PrivateKeyId(user.getUserId(), keyVersion(user), use);
+        PrivateKey cached = privateKeys.getIfPresent(id);
+        if (cached != null) {
+            return cached;
+        }
+        PrivateKey privateKey = keyService.decryptPrivateKey(encrypted, use.algorithm);
+        privateKeys.put(id, privateKey);
+        return privateKey;
+    }
+
+    // Call whenever a user's keys change or the account is removed
+    public void invalidate(Long userId) {
+        privateKeys.asMap().keySet().removeIf(id -> id.userId().equals(userId));
+        publicKeys.asMap().keySet().removeIf(id -> id.userId().equals(userId));
+    }
+
+    private static String fingerprint(String encodedPublicKey) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(encodedPublicKey.getBytes(StandardCharsets.US_ASCII));
+        return HexFormat.of().formatHex(digest);
+    }
+
+    // Every field is length-prefixed so no two different inputs hash the same bytes
+    private static String verificationId(KeyUse use, String encodedPublicKey, byte[] data, String signatureBase64) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((byte) use.ordinal());
+        for (byte[] field : new byte[][]{encodedPublicKey.getBytes(StandardCharsets.US_ASCII), data,
+                signatureBase64.getBytes(StandardCharsets.US_ASCII)}) {
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(field.length).array());
+            digest.update(field);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private int keyVersion(User user) {
+        return user.getKeyVersion() != null ? user.getKeyVersion() : 0;
+    }
+
+    // The JDK's RSA keys do not implement destroy(); for those, dropping the last reference is all we can do
+    private void destroy(PrivateKey key) {
+        if (key == null || key.isDestroyed()) {
+            return;
+        }
+        try {
+            key.destroy();
+        } catch (DestroyFailedException e) {
+            // Not supported by this key implementation
+        }
+    }
+}
@@ -1,24 +1,15 @@
 package org.example.secureshare.service;
 
-import com.sendgrid.helpers.mail.Mail;
-import com.sendgrid.helpers.mail.objects.Content;
-import com.sendgrid.helpers.mail.objects.Email;
-import com.sendgrid.Method;
-import com.sendgrid.Request;
-import com.sendgrid.Response;
-import com.sendgrid.SendGrid;
-import java.io.IOException;
-import org.example.secureshare.model.AuditLog;
 import org.example.secureshare.model.File;
 import org.example.secureshare.model.User;
 import org.example.secureshare.payload.userutilsDTO.SettingsDTO;
 import org.example.secureshare.repository.AuditLogRepository;
 import org.example.secureshare.repository.FileRepository;
 import org.example.secureshare.repository.UserRepository;
+import org.example.secureshare.security.services.CredentialVersionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -44,11 +35,11 @@ public class UserService {
     @Autowired
     private FileService fileService;
 
-    @Value("${spring.sendgrid.api-key}")
-    private String sendGridApiKey;
+    @Autowired
+    private UserKeyService userKeyService;
 
-    @Value("${spring.mail.properties.mail.smtp.from}")
-    private String senderEmail;
+    @Autowired
+    private EmailService emailService;
 
     @Autowired
     private OtpService otpService;
@@ -56,6 +47,9 @@ public class UserService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private CredentialVersionService credentialVersionService;
+
     public void initiatePasswordReset(String email) {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new NoSuchElementException("User not found with email: " + email));
@@ -63,6 +57,7 @@ public class UserService {
         otpService.generateAndSendOtp(user.getEmail());
     }
 
+    @Transactional
     public void resetPassword(String email, String otp, String newPassword) {
         if (!otpService.verifyOtp(email, otp)) {
             throw new IllegalArgumentException("Invalid or expired OTP.");
@@ -73,36 +68,17 @@ public class UserService {
 
         String encodedPassword = passwordEncoder.encode(newPassword);
         user.setPassword(encodedPassword);
+        // Tokens issued under the old password stop working
+        credentialVersionService.revokeTokens(user);
         userRepository.save(user);
     }
 
+    @Transactional
     public void findUsernameByEmail(String email) {
         User user = userRepository.findByEmail(email)
                 .orElseThrow(() -> new NoSuchElementException("User not found with email: " + email));
 
-        Email from = new Email(senderEmail);
-        String subject = "Username Retrieval Request";
-        Email to = new Email(email);
-        String textContent = "Hello,\n\nYour username is: " + user.getUsername() + "\n\nIf you did not request this, please ignore this email.";
-        Content content = new Content("text/plain", textContent);
-        Mail mail = new Mail(from, subject, to, content);
-
-        SendGrid sg = new SendGrid(sendGridApiKey);
-        Request request = new Request();
-        try {
-            request.setMethod(Method.POST);
-            request.setEndpoint("mail/send");
-            request.setBody(mail.build());
-            Response response = sg.api(request);
-
-            if (response.getStatusCode() < 200 || response.getStatusCode() >= 300) {
-                // Log the error but don't crash the user's request
-                logger.error("Failed to send username email: {}", response.getBody());
-            }
-        } catch (IOException ex) {
-            // Log the error
-            logger.error("Error sending username email: {}", ex.getMessage());
-        }
+        emailService.sendUsername(email, user.getUsername());
     }
 
     @Transactional
@@ -122,10 +98,11 @@ public class UserService {
             }
         }
 
-        List<AuditLog> auditLogList = auditLogRepository.findAuditLogsByUserId(user.getUserId());
-        auditLogRepository.deleteAll(auditLogList);
+        auditLogRepository.deleteByUserId(user.getUserId());
 
         userRepository.delete(user);
+        userKeyService.invalidate(user.getUserId());
+        credentialVersionService.evictAfterCommit(user.getUserId());
     }
 
     @Transactional(readOnly = true)
@@ -0,0 +1,30 @@
+package org.example.secureshare.storage;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * Storage for encrypted file payloads. Blobs are immutable and addressed by an id derived from their content,
+ * so writing the same bytes twice yields the same id.
+ */
+public interface BlobStore {
+
+    BlobWriter openWriter() throws IOException;
+
+    /**
+     * Publishes the content of a fully written local file under {@code blobId}, leaving the file itself in
+     * place for the caller to delete. Used when the caller assembled the blob itself; {@code blobId} must be
+     * the SHA-256 of the file's content, as {@link BlobWriter#commit()} would have produced, and the caller
+     * must not change the file afterwards. Adopting a blob that already exists does nothing.
+     */
+    void adopt(Path source, String blobId) throws IOException;
+
+    SeekableByteChannel openReader(String blobId) throws IOException;
+
+    long size(String blobId) throws IOException;
+
+    boolean exists(String blobId);
+
+    void delete(String blobId) throws IOException;
+}
@@ -0,0 +1,10 @@
+package org.example.secureshare.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Stream into a blob that only becomes visible once commit() returns its id; closing without committing discards it
+public abstract class BlobWriter extends OutputStream {
+
+    public abstract String commit() throws IOException;
+}
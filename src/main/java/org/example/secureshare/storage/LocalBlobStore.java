@@ -0,0 +1,157 @@
+package org.example.secureshare.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+// Content-addressed blobs on local disk: <root>/ab/cd/abcd... keyed by the SHA-256 of the stored bytes.
+// Writes go to <root>/tmp first and are published with an atomic rename, so readers never see partial blobs.
+@Component
+@ConditionalOnProperty(name = "spring.app.blobStore.type", havingValue = "local", matchIfMissing = true)
+public class LocalBlobStore implements BlobStore {
+
+    private static final Pattern BLOB_ID = Pattern.compile("[0-9a-f]{64}");
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path root;
+    private final Path tempDir;
+
+    public LocalBlobStore(@Value("${spring.app.blobStore.root}") String root) throws IOException {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        this.tempDir = this.root.resolve("tmp");
+        Files.createDirectories(tempDir);
+    }
+
+    @Override
+    public BlobWriter openWriter() throws IOException {
+        Path tempFile = tempDir.resolve(UUID.randomUUID() + ".part");
+        return new LocalBlobWriter(tempFile);
+    }
+
+    @Override
+    public void adopt(Path source, String blobId) throws IOException {
+        Path target = pathFor(blobId);
+        if (Files.exists(target)) {
+            return;
+        }
+        Files.createDirectories(target.getParent());
+        Path tempFile = tempDir.resolve(UUID.randomUUID() + ".part");
+        try {
+            try {
+                Files.createLink(tempFile, source);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // Staged on another file system: copy next to the store first so publishing stays atomic
+                Files.copy(source, tempFile);
+                try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public SeekableByteChannel openReader(String blobId) throws IOException {
+        return FileChannel.open(pathFor(blobId), StandardOpenOption.READ);
+    }
+
+    @Override
+    public long size(String blobId) throws IOException {
+        return Files.size(pathFor(blobId));
+    }
+
+    @Override
+    public boolean exists(String blobId) {
+        return Files.exists(pathFor(blobId));
+    }
+
+    @Override
+    public void delete(String blobId) throws IOException {
+        Files.deleteIfExists(pathFor(blobId));
+    }
+
+    private Path pathFor(String blobId) {
+        if (blobId == null || !BLOB_ID.matcher(blobId).matches()) {
+            throw new IllegalArgumentException("Invalid blob id: " + blobId);
+        }
+        return root.resolve(blobId.substring(0, 2)).resolve(blobId.substring(2, 4)).resolve(blobId);
+    }
+
+    private class LocalBlobWriter extends BlobWriter {
+
+        private final Path tempFile;
+        private final FileChannel channel;
+        private final OutputStream out;
+        private final MessageDigest digest;
+        private boolean done;
+
+        LocalBlobWriter(Path tempFile) throws IOException {
+            this.tempFile = tempFile;
+            this.channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER_SIZE);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            digest.update(b, off, len);
+        }
+
+        @Override
+        public String commit() throws IOException {
+            if (done) {
+                throw new IllegalStateException("Blob writer already closed.");
+            }
+            out.flush();
+            channel.force(true);
+            channel.close();
+            done = true;
+
+            String blobId = HexFormat.of().formatHex(digest.digest());
+            Path target = pathFor(blobId);
+            Files.createDirectories(target.getParent());
+            // Identical content maps to the same path, so replacing an existing blob is harmless
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return blobId;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!done) {
+                done = true;
+                channel.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.example.secureshare.util;
 
 import org.example.secureshare.model.User;
 import org.example.secureshare.repository.UserRepository;
+import org.example.secureshare.security.services.UserDetailsImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -24,6 +25,15 @@ public class AuthUtil {
         return user;
     }
 
+    // Read from the token's claims, so callers that only need the id do not touch the user table
+    public Long getLoggedInUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl principal && principal.getId() != null) {
+            return principal.getId();
+        }
+        return getLoggedInUser().getUserId();
+    }
+
     public String getLoggedInUsername() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null) {
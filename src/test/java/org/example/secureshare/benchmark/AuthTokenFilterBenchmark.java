@@ -0,0 +1,125 @@
+package org.example.secureshare.benchmark;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.example.secureshare.repository.RevokedTokenRepository;
+import org.example.secureshare.repository.UserRepository;
+import org.example.secureshare.security.jwt.AuthTokenFilter;
+import org.example.secureshare.security.jwt.JwtUtils;
+import org.example.secureshare.security.services.CredentialVersionService;
+import org.example.secureshare.security.services.RevokedTokenService;
+import org.example.secureshare.security.services.UserDetailsImpl;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request cost of authenticating a JWT cookie. {@link #parseLegacy} repeats what the filter used to do for every
+ * request (decode the secret and build a parser twice, verifying the token each time); {@link #parseCached} is the
+ * single verification with the shared parser, and {@link #filterRequest} is the whole filter with a warm
+ * credential-version cache and a token that is not revoked. Run {@link #main} from the test classpath after
+ * {@code mvn test-compile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuthTokenFilterBenchmark {
+
+    private static final String COOKIE_NAME = "secureshare-jwt";
+
+    private String jwtSecret;
+    private String token;
+    private JwtUtils jwtUtils;
+    private AuthTokenFilter filter;
+    private MockHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        jwtSecret = Base64.getEncoder().encodeToString(secret);
+
+        jwtUtils = new JwtUtils();
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", jwtSecret);
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationsMs", 3_600_000);
+        ReflectionTestUtils.setField(jwtUtils, "jwtCookie", COOKIE_NAME);
+        jwtUtils.init();
+
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        Mockito.when(userRepository.findCredentialVersionById(1L)).thenReturn(Optional.of(0));
+        CredentialVersionService credentialVersionService = new CredentialVersionService(60_000, 1_000, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(credentialVersionService, "userRepository", userRepository);
+
+        RevokedTokenService revokedTokenService = new RevokedTokenService();
+        ReflectionTestUtils.setField(revokedTokenService, "revokedTokenRepository", Mockito.mock(RevokedTokenRepository.class));
+        ReflectionTestUtils.setField(revokedTokenService, "expectedTokens", 100_000);
+        ReflectionTestUtils.setField(revokedTokenService, "falsePositiveRate", 0.01);
+        revokedTokenService.init();
+
+        filter = new AuthTokenFilter();
+        ReflectionTestUtils.setField(filter, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(filter, "credentialVersionService", credentialVersionService);
+        ReflectionTestUtils.setField(filter, "revokedTokenService", revokedTokenService);
+
+        UserDetailsImpl principal = new UserDetailsImpl(1L, "alice", "alice@example.com", null,
+                List.of(new SimpleGrantedAuthority("ROLE_USER")));
+        principal.setCredentialVersion(0);
+        token = jwtUtils.generateTokenFromUser(principal);
+
+        request = new MockHttpServletRequest("GET", "/api/files");
+        request.setCookies(new Cookie(COOKIE_NAME, token));
+    }
+
+    @Benchmark
+    public String parseLegacy() {
+        SecretKey validationKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        Jwts.parser().verifyWith(validationKey).build().parseSignedClaims(token);
+        SecretKey usernameKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSecret));
+        return Jwts.parser().verifyWith(usernameKey).build().parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    @Benchmark
+    public Claims parseCached() {
+        return jwtUtils.parseClaims(token);
+    }
+
+    @Benchmark
+    public Object filterRequest() throws Exception {
+        // OncePerRequestFilter marks the request as filtered; clear that so every invocation runs the filter
+        request.clearAttributes();
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        SecurityContextHolder.clearContext();
+        return principal;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AuthTokenFilterBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
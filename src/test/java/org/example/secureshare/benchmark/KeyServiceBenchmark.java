@@ -0,0 +1,143 @@
+package org.example.secureshare.benchmark;
+
+import org.example.secureshare.service.KeyService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-operation overhead of the KeyService primitives. Each "legacy" benchmark repeats what KeyService used to do
+ * on every call (provider lookups, a fresh SecureRandom, re-decoding the master key); its counterpart calls the
+ * pooled KeyService. Run {@link #main} from the test classpath after {@code mvn test-compile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyServiceBenchmark {
+
+    private KeyService keyService;
+    private String masterKeyBase64;
+    private String wrappedSecret;
+    private String publicKeyBase64;
+    private PublicKey publicKey;
+    private byte[] aesKeyBytes;
+    private byte[] data;
+    private byte[] signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        new SecureRandom().nextBytes(masterKey);
+        masterKeyBase64 = Base64.getEncoder().encodeToString(masterKey);
+
+        keyService = new KeyService();
+        ReflectionTestUtils.setField(keyService, "masterKeyBase64", masterKeyBase64);
+        keyService.init();
+
+        KeyPair keyPair = keyService.generateRsaKeyPair();
+        publicKey = keyPair.getPublic();
+        publicKeyBase64 = keyService.encodePublicKey(publicKey);
+        aesKeyBytes = keyService.getAesKeyBytes(keyService.generateAesKey());
+        wrappedSecret = keyService.encryptWithMasterKey(aesKeyBytes);
+        data = "report.pdfquarterly figuresfinance".getBytes();
+        signature = keyService.signData(data, keyPair.getPrivate());
+    }
+
+    @Benchmark
+    public byte[] masterKeyUnwrapLegacy() throws Exception {
+        byte[] decodedKey = Base64.getDecoder().decode(masterKeyBase64);
+        SecretKey masterKey = new SecretKeySpec(decodedKey, 0, decodedKey.length, "AES");
+        byte[] combined = Base64.getDecoder().decode(wrappedSecret);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, masterKey, new GCMParameterSpec(128, combined, 0, 12));
+        return cipher.doFinal(combined, 12, combined.length - 12);
+    }
+
+    @Benchmark
+    public byte[] masterKeyUnwrapPooled() throws Exception {
+        return keyService.decryptWithMasterKey(wrappedSecret);
+    }
+
+    @Benchmark
+    public byte[] generateIvLegacy() {
+        byte[] iv = new byte[12];
+        new SecureRandom().nextBytes(iv);
+        return iv;
+    }
+
+    @Benchmark
+    public byte[] generateIvPooled() {
+        return keyService.generateIV();
+    }
+
+    @Benchmark
+    public SecretKey generateAesKeyLegacy() throws Exception {
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(256, new SecureRandom());
+        return keyGen.generateKey();
+    }
+
+    @Benchmark
+    public SecretKey generateAesKeyPooled() throws Exception {
+        return keyService.generateAesKey();
+    }
+
+    @Benchmark
+    public PublicKey decodePublicKeyLegacy() throws Exception {
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(Base64.getDecoder().decode(publicKeyBase64));
+        return KeyFactory.getInstance("RSA").generatePublic(spec);
+    }
+
+    @Benchmark
+    public PublicKey decodePublicKeyPooled() throws Exception {
+        return keyService.decodePublicKey(publicKeyBase64);
+    }
+
+    @Benchmark
+    public byte[] wrapAesKeyLegacy() throws Exception {
+        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+        return cipher.doFinal(aesKeyBytes);
+    }
+
+    @Benchmark
+    public byte[] wrapAesKeyPooled() throws Exception {
+        return keyService.encryptWithRsa(aesKeyBytes, publicKey);
+    }
+
+    @Benchmark
+    public boolean verifySignatureLegacy() throws Exception {
+        Signature verifier = Signature.getInstance("SHA256withRSA");
+        verifier.initVerify(publicKey);
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+
+    @Benchmark
+    public boolean verifySignaturePooled() throws Exception {
+        return keyService.verifySignature(data, signature, publicKey);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(KeyServiceBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
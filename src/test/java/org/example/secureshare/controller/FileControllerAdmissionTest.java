@@ -0,0 +1,140 @@
+package org.example.secureshare.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.secureshare.payload.fiteDTO.FileDownload;
+import org.example.secureshare.service.AuditLogService;
+import org.example.secureshare.service.FileService;
+import org.example.secureshare.service.TransferBudgetService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Downloads reserve transfer budget before any work is done and must give it back however the request ends
+class FileControllerAdmissionTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TransferBudgetService transferBudgetService = new TransferBudgetService(1, 512, 0, 5, meterRegistry);
+    private final FileService fileService = Mockito.mock(FileService.class);
+    private final AuditLogService auditLogService = Mockito.mock(AuditLogService.class);
+    private final Runnable sendKeys = Mockito.mock(Runnable.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        FileController controller = new FileController();
+        ReflectionTestUtils.setField(controller, "fileService", fileService);
+        ReflectionTestUtils.setField(controller, "auditLogService", auditLogService);
+        ReflectionTestUtils.setField(controller, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(controller, "transferBudgetService", transferBudgetService);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void streamedDownloadReleasesItsShare() throws Exception {
+        StreamingResponseBody body = out -> out.write(new byte[10]);
+        Mockito.when(fileService.downloadEncryptedFile(anyLong()))
+                .thenReturn(new FileDownload("a.bin", "application/octet-stream", 10L, body, null, null, sendKeys));
+
+        MvcResult result = mockMvc.perform(get("/api/auth/files/download/encrypted/1")).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        assertEquals(0, reserved());
+    }
+
+    // The error body never runs the download's body, so only the end of the async request can release the share
+    @Test
+    void failedDownloadReleasesItsShare() throws Exception {
+        Mockito.when(fileService.downloadEncryptedFile(anyLong())).thenThrow(new NoSuchElementException("gone"));
+
+        MvcResult result = mockMvc.perform(get("/api/auth/files/download/encrypted/1")).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isNotFound());
+
+        assertEquals(0, reserved());
+    }
+
+    @Test
+    void unsatisfiableRangeReleasesItsShare() throws Exception {
+        StreamingResponseBody body = out -> out.write(new byte[10]);
+        Mockito.when(fileService.downloadEncryptedFile(anyLong()))
+                .thenReturn(new FileDownload("a.bin", "application/octet-stream", 10L, body, (s, e) -> body, "\"x\"", sendKeys));
+
+        mockMvc.perform(get("/api/auth/files/download/encrypted/1").header(HttpHeaders.RANGE, "bytes=50-60"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+
+        assertEquals(0, reserved());
+        Mockito.verifyNoInteractions(sendKeys);
+    }
+
+    // Download managers open with bytes=0-; that response carries the whole ciphertext, so the keys go out
+    @Test
+    void rangeFromTheFirstByteSendsTheKeys() throws Exception {
+        Mockito.when(fileService.downloadEncryptedFile(anyLong())).thenReturn(rangeCapable());
+
+        MvcResult result = mockMvc.perform(get("/api/auth/files/download/encrypted/1").header(HttpHeaders.RANGE, "bytes=0-")).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isPartialContent());
+
+        Mockito.verify(sendKeys).run();
+        assertEquals(0, reserved());
+    }
+
+    @Test
+    void resumedRangeDoesNotSendTheKeysAgain() throws Exception {
+        Mockito.when(fileService.downloadEncryptedFile(anyLong())).thenReturn(rangeCapable());
+
+        MvcResult result = mockMvc.perform(get("/api/auth/files/download/encrypted/1").header(HttpHeaders.RANGE, "bytes=4-")).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isPartialContent());
+
+        Mockito.verifyNoInteractions(sendKeys);
+    }
+
+    // Legacy single-tag content is always served whole, whatever Range says
+    @Test
+    void legacyFileRequestedWithARangeIsSentWholeWithTheKeys() throws Exception {
+        StreamingResponseBody body = out -> out.write(new byte[10]);
+        Mockito.when(fileService.downloadEncryptedFile(anyLong()))
+                .thenReturn(new FileDownload("a.bin", "application/octet-stream", 10L, body, null, null, sendKeys));
+
+        MvcResult result = mockMvc.perform(get("/api/auth/files/download/encrypted/1").header(HttpHeaders.RANGE, "bytes=4-")).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        Mockito.verify(sendKeys).run();
+        assertEquals(0, reserved());
+    }
+
+    @Test
+    void rejectedDownloadDoesNoWork() throws Exception {
+        Optional<TransferBudgetService.Reservation> all = transferBudgetService.tryAcquire(1024 * 1024);
+
+        MvcResult result = mockMvc.perform(get("/api/auth/files/download/encrypted/1")).andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isServiceUnavailable());
+
+        Mockito.verifyNoInteractions(fileService, auditLogService);
+        all.orElseThrow().close();
+    }
+
+    private FileDownload rangeCapable() {
+        return new FileDownload("a.bin", "application/octet-stream", 10L, out -> out.write(new byte[10]),
+                (start, end) -> out -> out.write(new byte[(int) (end - start + 1)]), "\"x\"", sendKeys);
+    }
+
+    private double reserved() {
+        return meterRegistry.get("secureshare.transfer.budget.reserved").gauge().value();
+    }
+}
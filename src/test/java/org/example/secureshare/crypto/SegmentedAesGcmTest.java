@@ -0,0 +1,212 @@
+package org.example.secureshare.crypto;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A small segment size keeps the boundary cases cheap; the layout is the same as with the 64 KiB default
+class SegmentedAesGcmTest {
+
+    private static final int SEGMENT_SIZE = 16;
+    private static final int SEGMENT_WITH_TAG = SEGMENT_SIZE + SegmentedAesGcm.TAG_LENGTH;
+
+    @TempDir
+    Path dir;
+
+    private final SecureRandom random = new SecureRandom();
+    private SecretKey key;
+    private byte[] iv;
+    private byte[] plaintext;
+
+    @BeforeEach
+    void setUp() {
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+        iv = new byte[12];
+        random.nextBytes(iv);
+        // Three full segments and a short final one
+        plaintext = new byte[3 * SEGMENT_SIZE + 5];
+        random.nextBytes(plaintext);
+    }
+
+    @Test
+    void containerHasTheDocumentedLayoutAndRoundTrips() throws Exception {
+        byte[] container = encrypt(plaintext);
+
+        assertEquals(SegmentedAesGcm.ciphertextLength(plaintext.length, SEGMENT_SIZE), container.length);
+        assertArrayEquals(SegmentedAesGcm.header(SEGMENT_SIZE, iv), Arrays.copyOf(container, SegmentedAesGcm.HEADER_LENGTH));
+        assertEquals(plaintext.length, SegmentedAesGcm.plaintextLength(container.length, SEGMENT_SIZE));
+        assertArrayEquals(plaintext, decrypt(container, 0, plaintext.length - 1));
+    }
+
+    @Test
+    void segmentsUseTheBaseIvXorTheirIndexAndTheFinalFlag() throws Exception {
+        byte[] container = encrypt(plaintext);
+        byte[] header = Arrays.copyOf(container, SegmentedAesGcm.HEADER_LENGTH);
+
+        // Decrypt segment 2 and the final segment 3 with a plain GCM cipher to pin down nonce and AAD
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 2 * SEGMENT_SIZE, 3 * SEGMENT_SIZE),
+                decryptSegment(container, header, 2, SEGMENT_WITH_TAG, false));
+        assertArrayEquals(Arrays.copyOfRange(plaintext, 3 * SEGMENT_SIZE, plaintext.length),
+                decryptSegment(container, header, 3, 5 + SegmentedAesGcm.TAG_LENGTH, true));
+
+        // The same segment is rejected under the wrong final-segment flag
+        assertThrows(Exception.class, () -> decryptSegment(container, header, 2, SEGMENT_WITH_TAG, true));
+    }
+
+    @Test
+    void emptyFileHasOneEmptyFinalSegment() throws Exception {
+        byte[] container = encrypt(new byte[0]);
+
+        assertEquals(SegmentedAesGcm.HEADER_LENGTH + SegmentedAesGcm.TAG_LENGTH, container.length);
+        assertEquals(0, SegmentedAesGcm.plaintextLength(container.length, SEGMENT_SIZE));
+        byte[] header = Arrays.copyOf(container, SegmentedAesGcm.HEADER_LENGTH);
+        assertEquals(0, decryptSegment(container, header, 0, SegmentedAesGcm.TAG_LENGTH, true).length);
+    }
+
+    @Test
+    void truncationAtASegmentBoundaryIsRejected() throws Exception {
+        byte[] container = encrypt(plaintext);
+        byte[] truncated = Arrays.copyOf(container, SegmentedAesGcm.HEADER_LENGTH + 3 * SEGMENT_WITH_TAG);
+
+        // The length is valid for a three-segment file, but segment 2 was not sealed as the final one
+        assertEquals(3 * SEGMENT_SIZE, SegmentedAesGcm.plaintextLength(truncated.length, SEGMENT_SIZE));
+        assertThrows(IOException.class, () -> decrypt(truncated, 0, 3 * SEGMENT_SIZE - 1));
+        assertThrows(IOException.class, () -> decrypt(truncated, 2 * SEGMENT_SIZE, 2 * SEGMENT_SIZE));
+    }
+
+    @Test
+    void reorderedSegmentsAreRejected() throws Exception {
+        byte[] container = encrypt(plaintext);
+        int first = SegmentedAesGcm.HEADER_LENGTH;
+        int second = first + SEGMENT_WITH_TAG;
+        byte[] swapped = container.clone();
+        System.arraycopy(container, first, swapped, second, SEGMENT_WITH_TAG);
+        System.arraycopy(container, second, swapped, first, SEGMENT_WITH_TAG);
+
+        assertThrows(IOException.class, () -> decrypt(swapped, 0, 0));
+        assertThrows(IOException.class, () -> decrypt(swapped, SEGMENT_SIZE, SEGMENT_SIZE));
+    }
+
+    @Test
+    void tamperedSegmentFailsBeforeAnyOfItsPlaintextIsWritten() throws Exception {
+        byte[] container = encrypt(plaintext);
+        container[SegmentedAesGcm.HEADER_LENGTH + SEGMENT_WITH_TAG + 3] ^= 1;
+        Path file = Files.write(dir.resolve("tampered"), container);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(IOException.class, () -> segmentDecryptor().decrypt(channel, 0, plaintext.length - 1, out));
+        }
+        // Segment 0 was intact and went out; nothing of segment 1 did
+        assertArrayEquals(Arrays.copyOf(plaintext, SEGMENT_SIZE), out.toByteArray());
+    }
+
+    @Test
+    void headerWithAnotherIvIsRejected() throws Exception {
+        byte[] container = encrypt(plaintext);
+        container[SegmentedAesGcm.HEADER_LENGTH - 1] ^= 1;
+
+        assertThrows(IOException.class, () -> decrypt(container, 0, 0));
+    }
+
+    @Test
+    void rangesAroundSegmentBoundariesDecryptExactly() throws Exception {
+        byte[] container = encrypt(plaintext);
+        int[] offsets = {0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 2 * SEGMENT_SIZE - 1,
+                2 * SEGMENT_SIZE, 3 * SEGMENT_SIZE - 1, 3 * SEGMENT_SIZE, plaintext.length - 1};
+
+        for (int start : offsets) {
+            for (int end : offsets) {
+                if (end < start) {
+                    continue;
+                }
+                assertArrayEquals(Arrays.copyOfRange(plaintext, start, end + 1), decrypt(container, start, end),
+                        "range " + start + "-" + end);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> decrypt(container, 0, plaintext.length));
+    }
+
+    @Test
+    void chunksEncryptedInAnyOrderMatchTheStreamedContainer() throws Exception {
+        SegmentedAesGcmChunkEncryptor encryptor = new SegmentedAesGcmChunkEncryptor(
+                Cipher.getInstance("AES/GCM/NoPadding"), key, iv, SEGMENT_SIZE, plaintext.length);
+        byte[] assembled = new byte[(int) SegmentedAesGcm.ciphertextLength(plaintext.length, SEGMENT_SIZE)];
+        System.arraycopy(encryptor.header(), 0, assembled, 0, SegmentedAesGcm.HEADER_LENGTH);
+
+        // Chunks of two segments, the last one short, encrypted back to front
+        int chunkSize = 2 * SEGMENT_SIZE;
+        for (int offset = chunkSize; offset >= 0; offset -= chunkSize) {
+            int length = Math.min(chunkSize, plaintext.length - offset);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encryptor.encrypt(new ByteArrayInputStream(plaintext, offset, length), offset, length, out);
+            System.arraycopy(out.toByteArray(), 0, assembled, (int) encryptor.ciphertextOffset(offset), out.size());
+        }
+
+        assertArrayEquals(encrypt(plaintext), assembled);
+    }
+
+    @Test
+    void chunkOfTheWrongLengthIsRejected() throws Exception {
+        SegmentedAesGcmChunkEncryptor encryptor = new SegmentedAesGcmChunkEncryptor(
+                Cipher.getInstance("AES/GCM/NoPadding"), key, iv, SEGMENT_SIZE, plaintext.length);
+
+        assertThrows(IllegalArgumentException.class, () -> encryptor.encrypt(
+                new ByteArrayInputStream(plaintext, 0, SEGMENT_SIZE - 1), 0, SEGMENT_SIZE, OutputStream.nullOutputStream()));
+        assertThrows(IllegalArgumentException.class, () -> encryptor.encrypt(
+                new ByteArrayInputStream(plaintext, 0, SEGMENT_SIZE + 1), 0, SEGMENT_SIZE, OutputStream.nullOutputStream()));
+        assertThrows(IllegalArgumentException.class, () -> encryptor.encrypt(
+                new ByteArrayInputStream(plaintext), 1, SEGMENT_SIZE, OutputStream.nullOutputStream()));
+    }
+
+    private byte[] encrypt(byte[] data) throws Exception {
+        try (SegmentedAesGcmEncryptingInputStream in = new SegmentedAesGcmEncryptingInputStream(
+                new ByteArrayInputStream(data), Cipher.getInstance("AES/GCM/NoPadding"), key, iv, SEGMENT_SIZE)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private byte[] decrypt(byte[] container, long start, long end) throws Exception {
+        Path file = Files.write(dir.resolve("container"), container);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segmentDecryptor().decrypt(channel, start, end, out);
+        }
+        return out.toByteArray();
+    }
+
+    private SegmentedAesGcmDecryptor segmentDecryptor() throws Exception {
+        return new SegmentedAesGcmDecryptor(Cipher.getInstance("AES/GCM/NoPadding"), key, iv);
+    }
+
+    private byte[] decryptSegment(byte[] container, byte[] header, int index, int length, boolean finalSegment) throws Exception {
+        byte[] nonce = iv.clone();
+        nonce[nonce.length - 1] ^= (byte) index;
+        byte[] aad = Arrays.copyOf(header, header.length + 1);
+        aad[header.length] = (byte) (finalSegment ? 1 : 0);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(SegmentedAesGcm.TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(aad);
+        return cipher.doFinal(container, SegmentedAesGcm.HEADER_LENGTH + index * SEGMENT_WITH_TAG, length);
+    }
+}
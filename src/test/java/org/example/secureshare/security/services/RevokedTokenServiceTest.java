@@ -0,0 +1,124 @@
+package org.example.secureshare.security.services;
+
+import org.example.secureshare.model.RevokedToken;
+import org.example.secureshare.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+// The Bloom filter may only ever err towards "maybe revoked"; a revoked token that reads as valid is a bypass
+class RevokedTokenServiceTest {
+
+    private static final Date IN_AN_HOUR = new Date(System.currentTimeMillis() + 3_600_000);
+
+    private RevokedTokenRepository repository;
+    private RevokedTokenService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = Mockito.mock(RevokedTokenRepository.class);
+        Mockito.when(repository.findRevokedSince(any(), any())).thenReturn(List.of());
+        service = new RevokedTokenService();
+        ReflectionTestUtils.setField(service, "revokedTokenRepository", repository);
+        // Far fewer than are revoked below, so the filter runs well past its design load
+        ReflectionTestUtils.setField(service, "expectedTokens", 100);
+        ReflectionTestUtils.setField(service, "falsePositiveRate", 0.01);
+        service.init();
+    }
+
+    @Test
+    void everyRevokedTokenIsReportedAndOthersAreNot() {
+        List<String> revoked = revokeMany(5_000, IN_AN_HOUR);
+
+        revoked.forEach(jti -> assertTrue(service.isRevoked(jti), jti));
+        // Filter hits are confirmed against the exact set, so an overloaded filter still never rejects a live token
+        for (int i = 0; i < 5_000; i++) {
+            assertFalse(service.isRevoked(UUID.randomUUID().toString()));
+        }
+        assertFalse(service.isRevoked(null));
+    }
+
+    @Test
+    void refreshPicksUpRevocationsFromOtherNodes() {
+        LocalDateTime expiresAt = LocalDateTime.now().plusHours(1);
+        List<RevokedToken> elsewhere = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            elsewhere.add(new RevokedToken(UUID.randomUUID().toString(), expiresAt, LocalDateTime.now()));
+        }
+        Mockito.when(repository.findRevokedSince(any(), any())).thenReturn(elsewhere);
+
+        service.refresh();
+
+        elsewhere.forEach(token -> assertTrue(service.isRevoked(token.getJti())));
+    }
+
+    @Test
+    void refreshRereadsAWindowBeforeTheLastOne() {
+        service.refresh();
+        service.refresh();
+
+        ArgumentCaptor<LocalDateTime> since = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+        Mockito.verify(repository, Mockito.times(3)).findRevokedSince(since.capture(), now.capture());
+        // The third read starts a minute before the second one ran
+        assertEquals(now.getAllValues().get(1).minusSeconds(60), since.getAllValues().get(2));
+    }
+
+    @Test
+    void pruneForgetsExpiredTokensAndKeepsEveryLiveOne() {
+        List<String> expired = revokeMany(500, new Date(System.currentTimeMillis() - 1_000));
+        List<String> live = revokeMany(2_000, IN_AN_HOUR);
+
+        service.pruneExpired();
+
+        expired.forEach(jti -> assertFalse(service.isRevoked(jti)));
+        live.forEach(jti -> assertTrue(service.isRevoked(jti), jti));
+        Mockito.verify(repository).deleteExpired(any());
+    }
+
+    @Test
+    void tokensRevokedWhilePruningAreNotLost() throws Exception {
+        revokeMany(2_000, IN_AN_HOUR);
+        List<String> revokedDuringPrune = new ArrayList<>();
+        AtomicBoolean pruning = new AtomicBoolean(true);
+
+        Thread pruner = new Thread(() -> {
+            for (int i = 0; i < 50; i++) {
+                service.pruneExpired();
+            }
+            pruning.set(false);
+        });
+        pruner.start();
+        while (pruning.get()) {
+            String jti = UUID.randomUUID().toString();
+            service.revoke(jti, IN_AN_HOUR);
+            revokedDuringPrune.add(jti);
+        }
+        pruner.join();
+
+        assertFalse(revokedDuringPrune.isEmpty());
+        revokedDuringPrune.forEach(jti -> assertTrue(service.isRevoked(jti), jti));
+    }
+
+    private List<String> revokeMany(int count, Date expiration) {
+        List<String> jtis = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String jti = UUID.randomUUID().toString();
+            service.revoke(jti, expiration);
+            jtis.add(jti);
+        }
+        return jtis;
+    }
+}
@@ -0,0 +1,180 @@
+package org.example.secureshare.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.secureshare.mail.EmailTransport;
+import org.example.secureshare.mail.OutgoingEmail;
+import org.example.secureshare.model.EmailOutbox;
+import org.example.secureshare.repository.EmailOutboxRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The dispatcher sends from its own threads, so these tests commit for real instead of rolling back
+@DataJpaTest(properties = {
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "MASTER_KEY=AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=",
+        // The tests drive the dispatcher themselves; keep the scheduled run out of the way
+        "spring.app.mail.outbox.pollMs=3600000",
+        "spring.app.mail.outbox.batchSize=2",
+        "spring.app.mail.outbox.concurrency=2",
+        "spring.app.mail.outbox.leaseMs=60000",
+        "spring.app.mail.outbox.maxAttempts=2",
+        "spring.app.mail.outbox.initialBackoffMs=60000",
+        "spring.app.mail.outbox.maxBackoffMs=600000",
+        "spring.app.mail.outbox.failedRetentionMs=86400000",
+        "spring.app.mail.outbox.purgeIntervalMs=3600000"
+})
+@Import({EmailOutboxService.class, KeyService.class, EmailOutboxServiceTest.Config.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmailOutboxServiceTest {
+
+    private static final String FAILING_RECIPIENT = "down@example.com";
+
+    @TestConfiguration
+    static class Config {
+
+        @Bean
+        RecordingTransport recordingTransport() {
+            return new RecordingTransport();
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    // Stands in for the mail provider; refuses everything addressed to FAILING_RECIPIENT
+    static class RecordingTransport implements EmailTransport {
+
+        final Queue<OutgoingEmail> sent = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void send(OutgoingEmail email) throws IOException {
+            if (FAILING_RECIPIENT.equals(email.getTo())) {
+                throw new IOException("provider unavailable");
+            }
+            sent.add(email);
+        }
+    }
+
+    @Autowired
+    private EmailOutboxService emailOutboxService;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    @Autowired
+    private RecordingTransport transport;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        emailOutboxRepository.deleteAll();
+        transport.sent.clear();
+        meterRegistry.clear();
+    }
+
+    @Test
+    void queuedMailIsSentInBatchesAndRemoved() {
+        for (int i = 0; i < 5; i++) {
+            emailOutboxService.enqueue(new OutgoingEmail("otp", "user" + i + "@example.com", "Your OTP", "code " + i));
+        }
+        emailOutboxService.enqueue(new OutgoingEmail("decryption-keys", "owner@example.com", "Your keys", "attached",
+                "decryption_keys.json", "application/json", "{}".getBytes()));
+
+        emailOutboxService.dispatchPending();
+
+        assertEquals(6, transport.sent.size());
+        OutgoingEmail keys = transport.sent.stream().filter(OutgoingEmail::hasAttachment).findFirst().orElseThrow();
+        assertEquals("decryption_keys.json", keys.getAttachmentFilename());
+        assertArrayEquals("{}".getBytes(), keys.getAttachmentContent());
+        assertEquals(0, emailOutboxRepository.count());
+        assertEquals(5, meterRegistry.get("secureshare.mail.send").tag("template", "otp").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void payloadIsStoredEncrypted() {
+        emailOutboxService.enqueue(new OutgoingEmail("otp", "user@example.com", "Your OTP", "code 482913"));
+
+        EmailOutbox entry = emailOutboxRepository.findAll().get(0);
+        assertEquals("otp", entry.getTemplate());
+        assertFalse(entry.getPayload().contains("482913"));
+        assertFalse(entry.getPayload().contains("user@example.com"));
+    }
+
+    @Test
+    void failedSendIsRetriedAfterBackoffThenGivenUp() {
+        emailOutboxService.enqueue(new OutgoingEmail("otp", FAILING_RECIPIENT, "Your OTP", "code"));
+        emailOutboxService.enqueue(new OutgoingEmail("otp", "user@example.com", "Your OTP", "code"));
+
+        emailOutboxService.dispatchPending();
+
+        assertEquals(1, transport.sent.size());
+        List<EmailOutbox> remaining = emailOutboxRepository.findAll();
+        assertEquals(1, remaining.size());
+        EmailOutbox failed = remaining.get(0);
+        assertEquals(1, failed.getAttempts());
+        assertNull(failed.getFailedAt());
+        assertTrue(failed.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertTrue(failed.getLastError().contains("provider unavailable"));
+        assertEquals(1, meterRegistry.get("secureshare.mail.send").tag("outcome", "failure").timer().count());
+
+        // Not due yet, so a second run leaves it alone
+        emailOutboxService.dispatchPending();
+        assertEquals(1, emailOutboxRepository.findById(failed.getId()).orElseThrow().getAttempts());
+
+        emailOutboxRepository.scheduleRetry(failed.getId(), LocalDateTime.now().minusSeconds(1), failed.getLastError());
+        emailOutboxService.dispatchPending();
+
+        EmailOutbox givenUp = emailOutboxRepository.findById(failed.getId()).orElseThrow();
+        assertEquals(2, givenUp.getAttempts());
+        assertNotNull(givenUp.getFailedAt());
+
+        emailOutboxRepository.scheduleRetry(failed.getId(), LocalDateTime.now().minusSeconds(1), givenUp.getLastError());
+        emailOutboxService.dispatchPending();
+        assertEquals(2, emailOutboxRepository.findById(failed.getId()).orElseThrow().getAttempts());
+    }
+
+    @Test
+    void failedMailIsPurgedAfterTheRetention() {
+        emailOutboxService.enqueue(new OutgoingEmail("otp", "old@example.com", "Your OTP", "code"));
+        emailOutboxService.enqueue(new OutgoingEmail("otp", "recent@example.com", "Your OTP", "code"));
+        emailOutboxService.enqueue(new OutgoingEmail("otp", "pending@example.com", "Your OTP", "code"));
+        List<EmailOutbox> entries = emailOutboxRepository.findAll(Sort.by("id"));
+        emailOutboxRepository.markFailed(entries.get(0).getId(), LocalDateTime.now().minusDays(2), "gave up");
+        emailOutboxRepository.markFailed(entries.get(1).getId(), LocalDateTime.now().minusHours(1), "gave up");
+
+        emailOutboxService.purgeFailed();
+
+        // Only the row failed longer ago than the retention goes; pending mail is never touched
+        assertFalse(emailOutboxRepository.existsById(entries.get(0).getId()));
+        assertTrue(emailOutboxRepository.existsById(entries.get(1).getId()));
+        assertTrue(emailOutboxRepository.existsById(entries.get(2).getId()));
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.secureshare.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A short tick and a small wheel, so a few hundred milliseconds cover several laps
+class InMemoryOtpStoreTest {
+
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 8;
+    private static final long LAP_MS = TICK_MS * WHEEL_SIZE;
+
+    private InMemoryOtpStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryOtpStore(TICK_MS, WHEEL_SIZE);
+    }
+
+    @Test
+    void otpIsReclaimedOnceItsTickHasPassedAndNotBefore() throws Exception {
+        store.save("user@example.com", "123456", LocalDateTime.now().plusNanos(200_000_000));
+
+        store.advance();
+        assertTrue(store.find("user@example.com").isPresent());
+        assertEquals(1, scheduled());
+
+        Thread.sleep(200 + 2 * TICK_MS);
+        store.advance();
+
+        assertTrue(store.find("user@example.com").isEmpty());
+        assertEquals(0, scheduled());
+    }
+
+    @Test
+    void replacedOtpIsNotRemovedWhenThePreviousOneExpires() throws Exception {
+        store.save("user@example.com", "111111", LocalDateTime.now().plusNanos(30_000_000));
+        store.save("user@example.com", "222222", LocalDateTime.now().plusNanos(400_000_000));
+
+        // Ticks through several laps: the old entry fires, the new one keeps coming round without being due
+        long until = System.currentTimeMillis() + 3 * LAP_MS;
+        while (System.currentTimeMillis() < until) {
+            Thread.sleep(TICK_MS);
+            store.advance();
+        }
+        assertEquals("222222", store.find("user@example.com").orElseThrow().getOtpCode());
+        assertEquals(1, scheduled());
+
+        Thread.sleep(400);
+        store.advance();
+        assertTrue(store.find("user@example.com").isEmpty());
+        assertEquals(0, scheduled());
+    }
+
+    @Test
+    void oneAdvanceAfterAStallReclaimsEverythingThatExpired() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            store.save("user" + i + "@example.com", "123456", LocalDateTime.now().plusNanos(i * 5_000_000L));
+        }
+        store.save("late@example.com", "123456", LocalDateTime.now().plusMinutes(5));
+
+        Thread.sleep(250 + 2 * TICK_MS);
+        store.advance();
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(store.find("user" + i + "@example.com").isEmpty(), "user" + i);
+        }
+        assertTrue(store.find("late@example.com").isPresent());
+        assertEquals(1, scheduled());
+    }
+
+    @Test
+    void otpSavedAlreadyExpiredIsNeverAcceptedAndReclaimedWithinALap() throws Exception {
+        Thread.sleep(3 * TICK_MS);
+        store.advance();
+        store.save("user@example.com", "123456", LocalDateTime.now().minusSeconds(1));
+
+        assertFalse(store.consume("user@example.com", "123456"));
+
+        Thread.sleep(LAP_MS + TICK_MS);
+        store.advance();
+        assertTrue(store.find("user@example.com").isEmpty());
+        assertEquals(0, scheduled());
+    }
+
+    @Test
+    void consumeAcceptsTheRightCodeOnce() {
+        store.save("user@example.com", "123456", LocalDateTime.now().plusMinutes(5));
+
+        assertFalse(store.consume("user@example.com", "654321"));
+        assertFalse(store.consume("other@example.com", "123456"));
+        assertTrue(store.consume("user@example.com", "123456"));
+        assertFalse(store.consume("user@example.com", "123456"));
+    }
+
+    @Test
+    void removedOtpIsGoneAndItsExpiryIsHarmless() throws Exception {
+        store.save("user@example.com", "123456", LocalDateTime.now().plusNanos(20_000_000));
+
+        store.remove("user@example.com");
+        assertTrue(store.find("user@example.com").isEmpty());
+
+        Thread.sleep(20 + 2 * TICK_MS);
+        store.advance();
+        assertEquals(0, scheduled());
+    }
+
+    // Expiry entries still filed on the wheel
+    @SuppressWarnings("unchecked")
+    private int scheduled() {
+        List<Queue<?>> wheel = (List<Queue<?>>) ReflectionTestUtils.getField(store, "wheel");
+        return wheel.stream().mapToInt(Queue::size).sum();
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.secureshare.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.example.secureshare.model.File;
+import org.example.secureshare.model.SharedFile;
+import org.example.secureshare.model.User;
+import org.example.secureshare.payload.sharedfileDTO.FetchUsersResponse;
+import org.example.secureshare.payload.sharedfileDTO.SharedFileResponse;
+import org.example.secureshare.payload.sharedfileDTO.SharedFilesResponse;
+import org.example.secureshare.util.AuthUtil;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Shared-file listings must resolve usernames in the page query, so the number of statements per listing
+// stays the same whatever the page size.
+@DataJpaTest(properties = {
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({SharedFileService.class, AuthUtil.class})
+class SharedFileServiceQueryCountTest {
+
+    private static final int SHARES = 30;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private SharedFileService sharedFileService;
+
+    private Statistics statistics;
+    private Long originalFileId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        User owner = persistUser("owner");
+        File original = new File();
+        original.setFilename("report.pdf");
+        original.setCategory("docs");
+        original.setOwnerId(owner.getUserId());
+        entityManager.persist(original);
+        originalFileId = original.getId();
+
+        for (int i = 0; i < SHARES; i++) {
+            User other = persistUser("member" + i);
+            entityManager.persist(new SharedFile(null, 1000L + i, originalFileId, owner.getUserId(), other.getUserId(),
+                    "report.pdf", "docs", String.valueOf(i % 2 == 0), LocalDateTime.now()));
+            entityManager.persist(new SharedFile(null, 2000L + i, 3000L + i, other.getUserId(), owner.getUserId(),
+                    "notes" + i + ".txt", "misc", "false", LocalDateTime.now()));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("owner", null));
+    }
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void filesSharedByMeRunTheSameStatementsForAnyPageSize() {
+        long small = countStatements(() -> sharedFileService.getFilesSharedByMe(1, 5, "id", "desc", null, null));
+        long large = countStatements(() -> sharedFileService.getFilesSharedByMe(1, 25, "id", "desc", null, null));
+
+        assertEquals(2, small);
+        assertEquals(small, large);
+    }
+
+    @Test
+    void filesSharedToMeRunTheSameStatementsForAnyPageSize() {
+        long small = countStatements(() -> sharedFileService.getFilesSharedToMe(1, 5, "id", "desc", null, null));
+        long large = countStatements(() -> sharedFileService.getFilesSharedToMe(1, 25, "id", "desc", null, null));
+
+        assertEquals(2, small);
+        assertEquals(small, large);
+    }
+
+    @Test
+    void recipientsOfAFileRunTheSameStatementsForAnyPageSize() {
+        long small = countStatements(() -> sharedFileService.getUsersFileIsSharedWith(originalFileId, null, 1, 5, "id", "asc"));
+        long large = countStatements(() -> sharedFileService.getUsersFileIsSharedWith(originalFileId, null, 1, 25, "id", "asc"));
+
+        assertEquals(small, large);
+    }
+
+    @Test
+    void listingsResolveBothUsernamesAndApplyFilters() {
+        SharedFilesResponse sent = sharedFileService.getFilesSharedByMe(1, 50, "id", "asc", "member1", "true");
+        assertTrue(sent.getFetchFiles().stream().allMatch(response -> response.getSenderName().equals("owner")
+                && response.getRecipientName().startsWith("member1") && response.getIsSensitive()));
+        // member1, member10 ... member19 match the keyword; only the even ones are marked sensitive
+        assertEquals(5, sent.getTotalElements());
+
+        SharedFilesResponse received = sharedFileService.getFilesSharedToMe(1, 50, "id", "asc", null, null);
+        assertEquals(SHARES, received.getTotalElements());
+        SharedFileResponse first = received.getFetchFiles().get(0);
+        assertEquals("member0", first.getSenderName());
+        assertEquals("owner", first.getRecipientName());
+
+        FetchUsersResponse recipients = sharedFileService.getUsersFileIsSharedWith(originalFileId, "member2", 1, 50, "id", "asc");
+        assertEquals(11, recipients.getTotalElements());
+        assertTrue(recipients.getUsernames().stream().allMatch(username -> username.startsWith("member2")));
+    }
+
+    private User persistUser(String username) {
+        return entityManager.persist(new User(username, username + "@example.com", "password"));
+    }
+
+    // Starts from an empty persistence context so earlier calls cannot hide lookups
+    private long countStatements(Supplier<?> listing) {
+        entityManager.clear();
+        statistics.clear();
+        listing.get();
+        return statistics.getPrepareStatementCount();
+    }
+}
@@ -0,0 +1,266 @@
+package org.example.secureshare.service;
+
+import org.example.secureshare.crypto.SegmentedAesGcm;
+import org.example.secureshare.model.User;
+import org.example.secureshare.payload.fiteDTO.CreateUploadSessionRequest;
+import org.example.secureshare.payload.fiteDTO.UploadSessionResponse;
+import org.example.secureshare.repository.UploadChunkRepository;
+import org.example.secureshare.repository.UploadSessionRepository;
+import org.example.secureshare.repository.UserRepository;
+import org.example.secureshare.security.services.UserDetailsImpl;
+import org.example.secureshare.storage.BlobStore;
+import org.example.secureshare.storage.LocalBlobStore;
+import org.example.secureshare.util.AuthUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Chunk claims and the commit's own transaction have to really commit, so nothing here rolls back
+@DataJpaTest(properties = {
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "MASTER_KEY=AAECAwQFBgcICQoLDA0ODxAREhMUFRYXGBkaGxwdHh8=",
+        "spring.app.uploadSession.chunkSize=65536",
+        "spring.app.uploadSession.maxFileSize=1048576",
+        "spring.app.uploadSession.ttlMs=3600000",
+        "spring.app.uploadSession.cleanupIntervalMs=3600000"
+})
+@Import({UploadSessionService.class, KeyService.class, AuthUtil.class, LocalBlobStore.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UploadSessionServiceTest {
+
+    private static final int CHUNK_SIZE = 65536;
+    private static final long FILE_ID = 42L;
+
+    @TempDir
+    static Path dataDir;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("spring.app.uploadSession.stagingDir", () -> dataDir.resolve("uploads").toString());
+        registry.add("spring.app.blobStore.root", () -> dataDir.resolve("blobs").toString());
+    }
+
+    @MockitoBean
+    private FileService fileService;
+
+    @Autowired
+    private UploadSessionService uploadSessionService;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private UploadChunkRepository uploadChunkRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private KeyService keyService;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    private byte[] plaintext;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        User user = userRepository.save(new User("alice", "alice@example.com", "password"));
+        UserDetailsImpl principal = new UserDetailsImpl(user.getUserId(), "alice", "alice@example.com", null, List.of());
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(principal, null, List.of()));
+
+        // A full chunk and a short last one
+        plaintext = new byte[CHUNK_SIZE + 1000];
+        new SecureRandom().nextBytes(plaintext);
+        when(fileService.saveEncryptedUpload(any(), anyString(), any(), any(), anyString(), any(), any(), anyString())).thenReturn(FILE_ID);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        uploadChunkRepository.deleteAll();
+        uploadSessionRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void retriedChunkIsAcceptedAndTheCommittedBlobIsAddressedByItsContent() throws Exception {
+        String sessionId = createSession();
+
+        putChunk(sessionId, 0, chunk(0));
+        UploadSessionResponse retried = putChunk(sessionId, 0, chunk(0));
+        assertEquals(List.of(0), retried.getReceivedChunks());
+        putChunk(sessionId, 1, chunk(1));
+
+        assertEquals(FILE_ID, uploadSessionService.commit(sessionId));
+
+        String blobRef = committedBlobRef();
+        assertEquals(sha256OfBlob(blobRef), blobRef);
+        assertArrayEquals(plaintext, decryptCommitted(blobRef));
+        assertFalse(uploadSessionRepository.existsById(sessionId));
+        assertTrue(stagingFiles(sessionId).isEmpty());
+    }
+
+    @Test
+    void retryWithOtherContentIsRejectedAndNeverReachesTheContainer() throws Exception {
+        String sessionId = createSession();
+        putChunk(sessionId, 0, chunk(0));
+
+        byte[] other = chunk(0);
+        other[10] ^= 1;
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> putChunk(sessionId, 0, other));
+        assertTrue(rejected.getMessage().contains("different content"));
+
+        putChunk(sessionId, 1, chunk(1));
+        uploadSessionService.commit(sessionId);
+        assertArrayEquals(plaintext, decryptCommitted(committedBlobRef()));
+    }
+
+    @Test
+    void incompleteUploadCannotBeCommitted() throws Exception {
+        String sessionId = createSession();
+        putChunk(sessionId, 1, chunk(1));
+
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> uploadSessionService.commit(sessionId));
+
+        assertTrue(rejected.getMessage().contains("1 of 2"));
+        verify(fileService, never()).saveEncryptedUpload(any(), any(), any(), any(), any(), any(), any(), any());
+        assertTrue(uploadSessionRepository.existsById(sessionId));
+    }
+
+    @Test
+    void damagedChunkIsReportedOnCommitAndRepairedByResendingIt() throws Exception {
+        String sessionId = createSession();
+        putChunk(sessionId, 0, chunk(0));
+        putChunk(sessionId, 1, chunk(1));
+
+        // Stands in for a copy cut short by a crash after the chunk was claimed
+        Path staged = dataDir.resolve("uploads").resolve(sessionId + ".part");
+        try (FileChannel channel = FileChannel.open(staged, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[16]), Files.size(staged) - 100);
+        }
+
+        IllegalStateException rejected = assertThrows(IllegalStateException.class, () -> uploadSessionService.commit(sessionId));
+        assertTrue(rejected.getMessage().contains("[1]"));
+
+        putChunk(sessionId, 1, chunk(1));
+        uploadSessionService.commit(sessionId);
+        assertArrayEquals(plaintext, decryptCommitted(committedBlobRef()));
+    }
+
+    @Test
+    void commitWhoseTransactionFailsCanBeRetried() throws Exception {
+        String sessionId = createSession();
+        putChunk(sessionId, 0, chunk(0));
+        putChunk(sessionId, 1, chunk(1));
+        when(fileService.saveEncryptedUpload(any(), anyString(), any(), any(), anyString(), any(), any(), anyString()))
+                .thenThrow(new RuntimeException("connection reset"))
+                .thenReturn(FILE_ID);
+
+        assertThrows(RuntimeException.class, () -> uploadSessionService.commit(sessionId));
+        assertTrue(uploadSessionRepository.existsById(sessionId));
+        assertEquals(List.of(dataDir.resolve("uploads").resolve(sessionId + ".part")), stagingFiles(sessionId));
+
+        assertEquals(FILE_ID, uploadSessionService.commit(sessionId));
+        assertArrayEquals(plaintext, decryptCommitted(committedBlobRef()));
+        assertTrue(stagingFiles(sessionId).isEmpty());
+    }
+
+    @Test
+    void chunkOfTheWrongLengthIsRejected() {
+        String sessionId = createSession();
+
+        assertThrows(IllegalArgumentException.class, () -> putChunk(sessionId, 1, new byte[999]));
+        assertThrows(IllegalArgumentException.class, () -> putChunk(sessionId, 2, chunk(1)));
+        assertTrue(uploadChunkRepository.findChunkIndexesBySessionId(sessionId).isEmpty());
+    }
+
+    private String createSession() {
+        CreateUploadSessionRequest request = new CreateUploadSessionRequest();
+        request.setFilename("video.bin");
+        request.setSize((long) plaintext.length);
+        UploadSessionResponse session = uploadSessionService.createSession(request);
+        assertEquals(2, session.getChunkCount());
+        return session.getSessionId();
+    }
+
+    private UploadSessionResponse putChunk(String sessionId, int index, byte[] content) {
+        return uploadSessionService.putChunk(sessionId, index, new ByteArrayInputStream(content));
+    }
+
+    private byte[] chunk(int index) {
+        int from = index * CHUNK_SIZE;
+        return Arrays.copyOfRange(plaintext, from, Math.min(plaintext.length, from + CHUNK_SIZE));
+    }
+
+    private String committedBlobRef() throws Exception {
+        ArgumentCaptor<String> blobRef = ArgumentCaptor.forClass(String.class);
+        verify(fileService, atLeastOnce()).saveEncryptedUpload(any(), eq("video.bin"), any(), any(), anyString(), any(), any(), blobRef.capture());
+        return blobRef.getValue();
+    }
+
+    private byte[] decryptCommitted(String blobRef) throws Exception {
+        ArgumentCaptor<SecretKey> key = ArgumentCaptor.forClass(SecretKey.class);
+        ArgumentCaptor<byte[]> iv = ArgumentCaptor.forClass(byte[].class);
+        verify(fileService, atLeastOnce()).saveEncryptedUpload(any(), any(), any(), any(), any(), key.capture(), iv.capture(), any());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SeekableByteChannel channel = blobStore.openReader(blobRef)) {
+            keyService.segmentDecryptor(key.getValue(), iv.getValue()).decrypt(channel, 0, plaintext.length - 1, out);
+        }
+        return out.toByteArray();
+    }
+
+    private String sha256OfBlob(String blobRef) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (InputStream in = Channels.newInputStream(blobStore.openReader(blobRef))) {
+            digest.update(in.readAllBytes());
+        }
+        assertEquals(SegmentedAesGcm.ciphertextLength(plaintext.length, SegmentedAesGcm.DEFAULT_SEGMENT_SIZE), blobStore.size(blobRef));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // The session's staged container and chunk attempts; attempts are always cleaned up
+    private List<Path> stagingFiles(String sessionId) throws Exception {
+        try (Stream<Path> files = Files.list(dataDir.resolve("uploads"))) {
+            return files.filter(path -> path.getFileName().toString().startsWith(sessionId)).toList();
+        }
+    }
+}
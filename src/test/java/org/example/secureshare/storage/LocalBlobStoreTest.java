@@ -0,0 +1,132 @@
+package org.example.secureshare.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalBlobStoreTest {
+
+    @TempDir
+    Path root;
+
+    private LocalBlobStore blobStore;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobStore = new LocalBlobStore(root.toString());
+    }
+
+    @Test
+    void committedBlobIsStoredUnderItsSha256InShardedDirectories() throws Exception {
+        byte[] content = "encrypted payload".getBytes();
+
+        String blobId = write(content);
+
+        assertEquals(sha256(content), blobId);
+        Path expected = root.resolve(blobId.substring(0, 2)).resolve(blobId.substring(2, 4)).resolve(blobId);
+        assertArrayEquals(content, Files.readAllBytes(expected));
+        assertEquals(content.length, blobStore.size(blobId));
+        assertArrayEquals(content, read(blobId));
+        assertTrue(tempFiles().isEmpty());
+    }
+
+    @Test
+    void blobIsInvisibleUntilCommitted() throws Exception {
+        byte[] content = "half written".getBytes();
+        String blobId = sha256(content);
+
+        try (BlobWriter writer = blobStore.openWriter()) {
+            writer.write(content);
+            assertFalse(blobStore.exists(blobId));
+            assertEquals(1, tempFiles().size());
+        }
+
+        // Closed without committing: nothing is published and the temp file is gone
+        assertFalse(blobStore.exists(blobId));
+        assertTrue(tempFiles().isEmpty());
+    }
+
+    @Test
+    void identicalContentIsStoredOnce() throws Exception {
+        byte[] content = "same bytes".getBytes();
+
+        String first = write(content);
+        String second = write(content);
+
+        assertEquals(first, second);
+        try (Stream<Path> shard = Files.list(root.resolve(first.substring(0, 2)).resolve(first.substring(2, 4)))) {
+            assertEquals(1, shard.count());
+        }
+    }
+
+    @Test
+    void adoptedFileIsPublishedAndLeftInPlace(@TempDir Path staging) throws Exception {
+        byte[] content = "assembled elsewhere".getBytes();
+        Path source = Files.write(staging.resolve("upload.part"), content);
+        String blobId = sha256(content);
+
+        blobStore.adopt(source, blobId);
+        // A retried commit adopts the same file again
+        blobStore.adopt(source, blobId);
+
+        assertArrayEquals(content, Files.readAllBytes(source));
+        assertTrue(blobStore.exists(blobId));
+        assertArrayEquals(content, read(blobId));
+        assertTrue(tempFiles().isEmpty());
+
+        // The caller's copy can go without taking the blob with it
+        Files.delete(source);
+        assertArrayEquals(content, read(blobId));
+    }
+
+    @Test
+    void deleteRemovesTheBlob() throws Exception {
+        String blobId = write("short lived".getBytes());
+
+        blobStore.delete(blobId);
+
+        assertFalse(blobStore.exists(blobId));
+    }
+
+    @Test
+    void idsThatAreNotHashesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> blobStore.exists("../../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.openReader("ABCDEF"));
+        assertThrows(IllegalArgumentException.class, () -> blobStore.delete(null));
+    }
+
+    private String write(byte[] content) throws IOException {
+        try (BlobWriter writer = blobStore.openWriter()) {
+            writer.write(content);
+            return writer.commit();
+        }
+    }
+
+    private byte[] read(String blobId) throws IOException {
+        try (InputStream in = Channels.newInputStream(blobStore.openReader(blobId))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(root.resolve("tmp"))) {
+            return files.toList();
+        }
+    }
+
+    private static String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}